@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.Channel;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.ferus.thumper.ChannelPoolType;
+
+/**
+ * Compares one borrow and return against each channel pool backend, configured the way {@code RabbitBuilder.pooled()}
+ * configures them, with as many or more threads than channels.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChannelPoolBenchmark {
+
+    @Param({"COMMONS_POOL", "CONCURRENT_BAG"})
+    public ChannelPoolType type;
+
+    @Param({"8"})
+    public int maxTotal;
+
+    private Pool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        GenericObjectPoolConfig<Channel> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(this.maxTotal);
+        config.setMaxIdle(this.maxTotal);
+        config.setTestOnReturn(true);
+        config.setTestOnBorrow(true);
+        config.setTestWhileIdle(true);
+        this.pool = switch (this.type) {
+            case COMMONS_POOL -> new CommonsPool(config);
+            case CONCURRENT_BAG -> new BagPool(config);};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void uncontended(Blackhole blackhole) throws Exception {
+        borrowAndReturn(blackhole);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void threadPerChannel(Blackhole blackhole) throws Exception {
+        borrowAndReturn(blackhole);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void oversubscribed(Blackhole blackhole) throws Exception {
+        borrowAndReturn(blackhole);
+    }
+
+    private void borrowAndReturn(Blackhole blackhole) throws Exception {
+        Channel channel = this.pool.borrow();
+        // Stands in for a short publish while the channel is held.
+        Blackhole.consumeCPU(64);
+        blackhole.consume(channel);
+        this.pool.release(channel);
+    }
+
+    private interface Pool {
+        Channel borrow() throws Exception;
+
+        void release(Channel channel) throws Exception;
+
+        void close();
+    }
+
+    private static final class CommonsPool extends BasePooledObjectFactory<Channel> implements Pool {
+
+        private final GenericObjectPool<Channel> pool;
+
+        private CommonsPool(GenericObjectPoolConfig<Channel> config) {
+            this.pool = new GenericObjectPool<>(this, config);
+        }
+
+        @Override
+        public Channel create() {
+            return StubChannel.open();
+        }
+
+        @Override
+        public PooledObject<Channel> wrap(Channel channel) {
+            return new DefaultPooledObject<>(channel);
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<Channel> p) {
+            return p.getObject().isOpen();
+        }
+
+        @Override
+        public Channel borrow() throws Exception {
+            return this.pool.borrowObject();
+        }
+
+        @Override
+        public void release(Channel channel) {
+            this.pool.returnObject(channel);
+        }
+
+        @Override
+        public void close() {
+            this.pool.close();
+        }
+    }
+
+    private static final class BagPool implements Pool {
+
+        private final ConcurrentChannelBag bag;
+
+        private BagPool(GenericObjectPoolConfig<Channel> config) {
+            this.bag = new ConcurrentChannelBag(StubChannel::open, config);
+        }
+
+        @Override
+        public Channel borrow() throws Exception {
+            return this.bag.borrow();
+        }
+
+        @Override
+        public void release(Channel channel) {
+            this.bag.release(channel);
+        }
+
+        @Override
+        public void close() {
+            this.bag.close();
+        }
+    }
+}
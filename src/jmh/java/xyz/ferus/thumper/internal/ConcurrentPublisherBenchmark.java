@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.Channel;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs many concurrent synchronous publishers, each publishing in confirm mode and blocking until its publish is
+ * confirmed, on the executor {@code RabbitBuilder} installs by default and on the one installed by
+ * {@code virtualThreads()}.
+ * <p>
+ * The broker is simulated: a publish blocks its thread for the socket write, and is confirmed after a fixed round
+ * trip. The {@code VIRTUAL} executor needs Java 21 or newer, and fails its trial on older runtimes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+@State(Scope.Benchmark)
+public class ConcurrentPublisherBenchmark {
+
+    private static final int CHANNELS = 8;
+    private static final long WRITE_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long CONFIRM_MILLIS = 2;
+    private static final byte[] BODY = new byte[256];
+
+    @Param({"CACHED", "VIRTUAL"})
+    public String executor;
+
+    @Param({"10000"})
+    public int publishers;
+
+    private ExecutorService service;
+    private ScheduledExecutorService broker;
+    private PublisherConfirms[] confirms;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.service = switch (this.executor) {
+            case "CACHED" -> Executors.newCachedThreadPool(SharedThreadFactory.INSTANCE);
+            case "VIRTUAL" -> virtualExecutor();
+            default -> throw new IllegalArgumentException(this.executor);};
+        this.broker = Executors.newScheduledThreadPool(2);
+        this.confirms = new PublisherConfirms[CHANNELS];
+        for (int i = 0; i < CHANNELS; i++) {
+            this.confirms[i] = simulatedChannel();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.service.shutdownNow();
+        this.broker.shutdownNow();
+    }
+
+    @Benchmark
+    public void publishAndAwaitConfirms() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(this.publishers);
+        for (int i = 0; i < this.publishers; i++) {
+            PublisherConfirms channel = this.confirms[i % CHANNELS];
+            this.service.execute(() -> {
+                try {
+                    channel.publish("benchmark", "", false, null, BODY).join();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private PublisherConfirms simulatedChannel() {
+        AtomicLong sequence = new AtomicLong(1);
+        PublisherConfirms[] self = new PublisherConfirms[1];
+        Channel channel = (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(), new Class<?>[] {Channel.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getNextPublishSeqNo":
+                            return sequence.get();
+                        case "basicPublish":
+                            long tag = sequence.getAndIncrement();
+                            LockSupport.parkNanos(WRITE_NANOS);
+                            this.broker.schedule(
+                                    () -> self[0].handleAck(tag, false), CONFIRM_MILLIS, TimeUnit.MILLISECONDS);
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        self[0] = new PublisherConfirms(channel);
+        return self[0];
+    }
+
+    // Benchmarks run from the class directory, where the Java 21 variant of VirtualThreads is not loaded, so the
+    // executor is looked up the way it would be called from Java 21.
+    private static ExecutorService virtualExecutor() throws ReflectiveOperationException {
+        try {
+            return (ExecutorService)
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer.", e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the channel usage of a Rabbit instance.
+ * <p>
+ * Creation and destruction rates can be derived by sampling {@link #created()} and {@link #destroyed()} over time.
+ * @param active the number of channels currently leased to a task
+ * @param idle the number of open channels waiting to be leased
+ * @param waiting the number of tasks currently waiting for a channel
+ * @param created the number of channels created so far
+ * @param destroyed the number of channels closed or invalidated so far
+ * @param leased the number of leases handed out so far
+ * @param meanLeaseWait the mean time tasks recently waited for a channel
+ * @param maxLeaseWait the longest time a task has waited for a channel
+ * @param leaked the number of leases held for longer than the leak detection threshold
+ */
+public record ChannelMetrics(
+        int active,
+        int idle,
+        int waiting,
+        long created,
+        long destroyed,
+        long leased,
+        Duration meanLeaseWait,
+        Duration maxLeaseWait,
+        long leaked) {}
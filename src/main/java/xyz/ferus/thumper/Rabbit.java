@@ -78,6 +78,12 @@ public interface Rabbit extends AutoCloseable {
      */
     CodecRegistry codecs();
 
+    /**
+     * Gets a snapshot of the channel usage of this Rabbit instance.
+     * @return the channel metrics for this Rabbit instance
+     */
+    ChannelMetrics channelMetrics();
+
     /**
      * Creates a {@link RabbitBuilder} for a Rabbit instance.
      * @return a builder for a Rabbit instance
@@ -28,9 +28,14 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
@@ -38,26 +43,49 @@ import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import xyz.ferus.thumper.codec.CodecRegistry;
+import xyz.ferus.thumper.exchange.Exchange;
+import xyz.ferus.thumper.exchange.PublishOptions;
+import xyz.ferus.thumper.exchange.PublishPriority;
+import xyz.ferus.thumper.exchange.RateLimit;
+import xyz.ferus.thumper.internal.AbstractRabbitImpl;
+import xyz.ferus.thumper.internal.ConnectionGroup;
 import xyz.ferus.thumper.internal.DirectExecutor;
+import xyz.ferus.thumper.internal.PublishSpool;
 import xyz.ferus.thumper.internal.RabbitImpl;
+import xyz.ferus.thumper.internal.RabbitImplConcurrentPooled;
 import xyz.ferus.thumper.internal.RabbitImplPooled;
+import xyz.ferus.thumper.internal.RabbitOptions;
 import xyz.ferus.thumper.internal.SharedThreadFactory;
+import xyz.ferus.thumper.internal.VirtualThreads;
+import xyz.ferus.thumper.queue.SubscriptionOptions;
 
 /**
  * A builder for a Rabbit instance.
  */
 public class RabbitBuilder {
 
+    private static final System.Logger LOGGER = System.getLogger(RabbitBuilder.class.getName());
+
     /**
      * The connection factory configurator.
      */
     @MonotonicNonNull private Consumer<ConnectionFactory> connectionFactoryConfigurator = null;
 
+    /**
+     * The number of connections to open.
+     */
+    private int connections = 1;
+
     /**
      * The executor.
      */
     @MonotonicNonNull private Executor executor = null;
 
+    /**
+     * Whether tasks and consumers run on virtual threads.
+     */
+    private boolean virtualThreads = false;
+
     /**
      * The codec registry.
      */
@@ -68,6 +96,86 @@ public class RabbitBuilder {
      */
     @MonotonicNonNull private Consumer<GenericObjectPoolConfig<Channel>> channelPoolConfigurator = null;
 
+    /**
+     * The channel pool implementation.
+     */
+    private ChannelPoolType channelPoolType = ChannelPoolType.COMMONS_POOL;
+
+    /**
+     * The number of channels an unpooled instance stripes its callers across.
+     */
+    private int channelStripes = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Whether publisher confirms are enabled.
+     */
+    private boolean publisherConfirms = false;
+
+    /**
+     * The number of coalesced publishes that triggers a flush.
+     */
+    private int coalescingBatchSize = 0;
+
+    /**
+     * How long a coalesced publish may wait for a flush.
+     */
+    @Nullable private Duration coalescingLinger = null;
+
+    /**
+     * How long a channel lease may be held before it is reported as a leak.
+     */
+    @Nullable private Duration leakDetectionThreshold = null;
+
+    /**
+     * The number of unsettled published messages at which publishing is held back.
+     */
+    private int maxInFlightMessages = Integer.MAX_VALUE;
+
+    /**
+     * The number of unsettled published bytes at which publishing is held back.
+     */
+    private long maxInFlightBytes = Long.MAX_VALUE;
+
+    /**
+     * What a publish does when it is held back.
+     */
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.WAIT;
+
+    /**
+     * How long an unconfirmed mandatory publish waits for a possible return.
+     */
+    private Duration returnWindow = Duration.ofMillis(100);
+
+    /**
+     * The directory publishes are spooled to while the broker is unavailable.
+     */
+    @Nullable private Path spoolDirectory = null;
+
+    /**
+     * The rate limit each exchange starts with.
+     */
+    @Nullable private RateLimit rateLimit = null;
+
+    /**
+     * The number of channels reserved for high priority publishes.
+     */
+    private int highPriorityChannels = 1;
+
+    /**
+     * The number of channels bulk publishes may hold at once.
+     */
+    private int bulkConcurrency = Integer.MAX_VALUE;
+
+    /**
+     * The options subscriptions use unless others are given.
+     */
+    private SubscriptionOptions subscriptionOptions = SubscriptionOptions.defaultOptions();
+
+    /**
+     * The size of each spool segment file, in bytes.
+     */
+    private int spoolSegmentSize = 64 * 1024 * 1024;
+
     RabbitBuilder() {}
 
     /**
@@ -85,6 +193,22 @@ public class RabbitBuilder {
         return this;
     }
 
+    /**
+     * Sets the number of connections to open.
+     * <p>
+     * Every connection has its own socket and I/O thread. Pooled or striped channels are spread evenly across the
+     * connections, and each subscription consumes on the connection carrying the fewest consumers.
+     * @param connections the number of connections
+     * @return this builder
+     */
+    public RabbitBuilder connections(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("Connection count must be at least 1, got " + connections);
+        }
+        this.connections = connections;
+        return this;
+    }
+
     /**
      * Sets the executor.
      * @param executor the executor
@@ -103,6 +227,19 @@ public class RabbitBuilder {
         return executor(DirectExecutor.INSTANCE);
     }
 
+    /**
+     * Runs channel tasks and consumer dispatch on virtual threads.
+     * <p>
+     * Every task gets its own virtual thread, so tasks blocked on socket writes or broker flow control no longer
+     * tie up platform threads. This replaces any executor set with {@link #executor(Executor)}. Virtual threads
+     * require Java 21 or newer; on older runtimes a warning is logged and the default executor is used instead.
+     * @return this builder
+     */
+    public RabbitBuilder virtualThreads() {
+        this.virtualThreads = true;
+        return this;
+    }
+
     /**
      * Sets the channel pool config to the default config.
      *
@@ -124,6 +261,48 @@ public class RabbitBuilder {
         return this;
     }
 
+    /**
+     * Sets the number of channels an unpooled instance stripes its callers across.
+     * <p>
+     * Each thread is given the next stripe in turn the first time it needs a channel, so threads are shared out evenly
+     * across the stripes, and with at least as many stripes as executor threads each thread has a channel of its
+     * own.
+     * <p>
+     * Defaults to the number of available processors. Has no effect if the channels are {@link #pooled() pooled}.
+     * @param channels the number of channels
+     * @return this builder
+     */
+    public RabbitBuilder striped(int channels) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Channel count must be at least 1, got " + channels);
+        }
+        this.channelStripes = channels;
+        return this;
+    }
+
+    /**
+     * Sets the channel pool implementation, using the default config.
+     * @param channelPoolType the channel pool implementation
+     * @return this builder
+     */
+    public RabbitBuilder pooled(ChannelPoolType channelPoolType) {
+        initializeChannelPoolConfigurator();
+        this.channelPoolType = channelPoolType;
+        return this;
+    }
+
+    /**
+     * Sets the channel pool implementation and configures the channel pool config.
+     * @param channelPoolType the channel pool implementation
+     * @param channelPoolConfigurator the channel pool configurator
+     * @return this builder
+     */
+    public RabbitBuilder pooled(
+            ChannelPoolType channelPoolType, Consumer<GenericObjectPoolConfig<Channel>> channelPoolConfigurator) {
+        this.channelPoolType = channelPoolType;
+        return pooled(channelPoolConfigurator);
+    }
+
     private void initializeChannelPoolConfigurator() {
         if (this.channelPoolConfigurator == null) {
             this.channelPoolConfigurator = config -> {
@@ -134,6 +313,194 @@ public class RabbitBuilder {
         }
     }
 
+    /**
+     * Enables publisher confirms.
+     * <p>
+     * Channels are put into confirm mode, and publish futures complete once the broker has acknowledged the message
+     * rather than once it has been written to the socket. A message rejected by the broker, or left unconfirmed when
+     * its channel closes, completes its future exceptionally.
+     * @return this builder
+     */
+    public RabbitBuilder publisherConfirms() {
+        this.publisherConfirms = true;
+        return this;
+    }
+
+    /**
+     * Enables publish coalescing.
+     * <p>
+     * Single publishes to an exchange are buffered and written together on one channel once either
+     * {@code batchSize} messages are waiting or {@code linger} has passed since the oldest of them was published.
+     * Messages are encoded by the publishing thread, so encoding errors still fail their own future. Publishes from
+     * different threads may be reordered relative to each other.
+     * @param batchSize the number of waiting messages that triggers a flush
+     * @param linger the longest a message waits before it is flushed
+     * @return this builder
+     * @see xyz.ferus.thumper.exchange.Exchange#coalescingMetrics()
+     */
+    public RabbitBuilder coalescing(int batchSize, Duration linger) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + batchSize);
+        }
+        this.coalescingBatchSize = batchSize;
+        this.coalescingLinger = linger;
+        return this;
+    }
+
+    /**
+     * Enables channel leak detection.
+     * <p>
+     * Any task that holds a channel for longer than the threshold is logged as a possible leak, along with the stack
+     * of the code that submitted it. This captures a stack trace for every task, so it is best suited to diagnosing
+     * pool exhaustion rather than being left on.
+     * @param threshold how long a channel may be held before it is reported
+     * @return this builder
+     * @see Rabbit#channelMetrics()
+     */
+    public RabbitBuilder leakDetection(Duration threshold) {
+        this.leakDetectionThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Limits the number of published messages and bytes that may be in flight at once.
+     * <p>
+     * A publish is in flight from the moment it is handed to the executor until it has been confirmed by the broker,
+     * or written to the socket if publisher confirms are disabled. Publishes that would exceed either limit wait,
+     * without holding a thread, until earlier ones have settled. Publishing is also held back while the broker has
+     * blocked any of the connections, for example because of a memory or disk alarm.
+     * @param messages the maximum number of messages in flight
+     * @param bytes the maximum number of encoded bytes in flight
+     * @return this builder
+     */
+    public RabbitBuilder maxInFlight(int messages, long bytes) {
+        return maxInFlight(messages, bytes, BackpressurePolicy.WAIT);
+    }
+
+    /**
+     * Limits the number of published messages and bytes that may be in flight at once.
+     * @param messages the maximum number of messages in flight
+     * @param bytes the maximum number of encoded bytes in flight
+     * @param policy what a publish does when it is held back
+     * @return this builder
+     * @see #maxInFlight(int, long)
+     */
+    public RabbitBuilder maxInFlight(int messages, long bytes, BackpressurePolicy policy) {
+        if (messages < 1 || bytes < 1) {
+            throw new IllegalArgumentException(
+                    "In-flight limits must be at least 1, got " + messages + " and " + bytes);
+        }
+        this.maxInFlightMessages = messages;
+        this.maxInFlightBytes = bytes;
+        this.backpressurePolicy = policy;
+        return this;
+    }
+
+    /**
+     * Sets how long a mandatory publish waits for the broker to return it when publisher confirms are disabled.
+     * <p>
+     * Without confirms the broker never acknowledges a routed message, so a mandatory publish is considered routed
+     * once this window has passed without a return. Returns usually arrive within a round trip, so the window only
+     * needs to cover the network latency to the broker. With publisher confirms enabled the window is not used.
+     * @param window how long to wait for a return
+     * @return this builder
+     * @see xyz.ferus.thumper.exchange.PublishOptions.Builder#mandatory(boolean)
+     */
+    public RabbitBuilder returnWindow(Duration window) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("Return window must not be negative, got " + window);
+        }
+        this.returnWindow = window;
+        return this;
+    }
+
+    /**
+     * Enables spooling publishes to disk while the broker is unavailable.
+     * <p>
+     * While any connection is down or blocked by the broker, publishes are appended to a memory-mapped journal in the
+     * given directory instead of failing or waiting, and their futures complete once they have been written to it.
+     * Publishes that fail because a connection is lost are spooled the same way. Once every connection is available
+     * again, the journal is published to the broker in order, and new publishes keep going to the journal until it
+     * has been drained, so ordering is preserved.
+     * <p>
+     * The journal survives the application exiting or crashing, and anything left in it is published once a Rabbit
+     * instance is next built with the same directory. A spooled publish may be delivered more than once if the
+     * connection is lost while it is being drained. Publishes the broker rejects while draining, such as mandatory
+     * publishes that cannot be routed, are logged and dropped, since their futures have already completed.
+     * <p>
+     * Connections only come back if automatic recovery is enabled on the connection factory, which it is by default.
+     * @param directory the directory to write the journal to, which must not be shared with another Rabbit instance
+     * @return this builder
+     */
+    public RabbitBuilder spool(Path directory) {
+        return spool(directory, this.spoolSegmentSize);
+    }
+
+    /**
+     * Enables spooling publishes to disk while the broker is unavailable.
+     * @param directory the directory to write the journal to, which must not be shared with another Rabbit instance
+     * @param segmentSize the size of each journal file, in bytes
+     * @return this builder
+     * @see #spool(Path)
+     */
+    public RabbitBuilder spool(Path directory, int segmentSize) {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("Spool segment size must be at least 4096 bytes, got " + segmentSize);
+        }
+        this.spoolDirectory = directory;
+        this.spoolSegmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Limits the rate at which each exchange publishes.
+     * <p>
+     * Every exchange gets its own token bucket, so the limit applies to each exchange separately rather than to the
+     * Rabbit instance as a whole. The limit of a single exchange can be changed with {@link Exchange#rateLimit}.
+     * Publishes drained from the spool are not limited.
+     * @param limit the rate limit each exchange starts with
+     * @return this builder
+     * @see Exchange#rateLimitMetrics()
+     */
+    public RabbitBuilder rateLimit(RateLimit limit) {
+        this.rateLimit = limit;
+        return this;
+    }
+
+    /**
+     * Configures the capacity of the publish priority lanes.
+     * <p>
+     * {@link PublishPriority#HIGH High priority} publishes are sent on channels of their own, opened the first time
+     * they are needed, so they never wait behind other traffic for a channel. {@link PublishPriority#BULK Bulk}
+     * publishes may only hold a limited number of channels at once, and queue in their own lane beyond that, leaving
+     * the rest of the channels to normal publishes. By default one channel is reserved for high priority publishes
+     * and bulk publishes are not limited.
+     * @param highPriorityChannels the number of channels reserved for high priority publishes
+     * @param bulkConcurrency the number of channels bulk publishes may hold at once
+     * @return this builder
+     * @see PublishOptions.Builder#priority(PublishPriority)
+     */
+    public RabbitBuilder priorityLanes(int highPriorityChannels, int bulkConcurrency) {
+        if (highPriorityChannels < 1 || bulkConcurrency < 1) {
+            throw new IllegalArgumentException(
+                    "Lane capacities must be at least 1, got " + highPriorityChannels + " and " + bulkConcurrency);
+        }
+        this.highPriorityChannels = highPriorityChannels;
+        this.bulkConcurrency = bulkConcurrency;
+        return this;
+    }
+
+    /**
+     * Sets the options subscriptions use unless others are given, such as the prefetch count and ack mode.
+     * @param options the default subscription options
+     * @return this builder
+     * @see xyz.ferus.thumper.queue.Queue#subscribe(Class, xyz.ferus.thumper.queue.QueueConsumer, SubscriptionOptions)
+     */
+    public RabbitBuilder subscriptionOptions(SubscriptionOptions options) {
+        this.subscriptionOptions = options;
+        return this;
+    }
+
     /**
      * Sets the codec registry.
      *
@@ -151,8 +518,18 @@ public class RabbitBuilder {
      */
     public CompletableFuture<Rabbit> build() {
         CompletableFuture<Rabbit> future = new CompletableFuture<>();
-        Executor executor = Objects.requireNonNullElseGet(
-                this.executor, () -> Executors.newCachedThreadPool(SharedThreadFactory.INSTANCE));
+        Executor executor;
+        if (this.virtualThreads && VirtualThreads.isSupported()) {
+            executor = VirtualThreads.newExecutor();
+        } else {
+            if (this.virtualThreads) {
+                LOGGER.log(
+                        System.Logger.Level.WARNING,
+                        "Virtual threads require Java 21 or newer, falling back to the default executor.");
+            }
+            executor = Objects.requireNonNullElseGet(
+                    this.executor, () -> Executors.newCachedThreadPool(SharedThreadFactory.INSTANCE));
+        }
         executor.execute(() -> {
             try {
                 Rabbit compiled = buildRabbitInternal(executor);
@@ -177,12 +554,59 @@ public class RabbitBuilder {
         if (this.connectionFactoryConfigurator != null) {
             this.connectionFactoryConfigurator.accept(connectionFactory);
         }
+        if (this.virtualThreads && executor instanceof ExecutorService service) {
+            // Consumer dispatch shares the executor, which is shut down once the connections are closed.
+            connectionFactory.setSharedExecutor(service);
+        }
 
-        Connection connection = connectionFactory.newConnection();
+        RabbitOptions options = new RabbitOptions(
+                this.publisherConfirms,
+                this.channelStripes,
+                this.coalescingBatchSize,
+                this.coalescingLinger,
+                this.leakDetectionThreshold,
+                this.maxInFlightMessages,
+                this.maxInFlightBytes,
+                this.backpressurePolicy,
+                this.returnWindow,
+                this.rateLimit,
+                this.highPriorityChannels,
+                this.bulkConcurrency,
+                this.subscriptionOptions);
+        @Nullable PublishSpool spool =
+                this.spoolDirectory == null ? null : PublishSpool.open(this.spoolDirectory, this.spoolSegmentSize);
+        List<Connection> connections = new ArrayList<>(this.connections);
+        try {
+            for (int i = 0; i < this.connections; i++) {
+                connections.add(connectionFactory.newConnection());
+            }
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            for (Connection opened : connections) {
+                try {
+                    opened.close();
+                } catch (Exception closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+            }
+            if (spool != null) {
+                spool.close();
+            }
+            throw e;
+        }
+        ConnectionGroup connectionGroup = new ConnectionGroup(connections);
+        AbstractRabbitImpl rabbit;
         if (channelPoolConfig != null) {
-            return new RabbitImplPooled(connection, executor, this.codecRegistry, channelPoolConfig);
+            rabbit = switch (this.channelPoolType) {
+                case COMMONS_POOL -> new RabbitImplPooled(
+                        connectionGroup, executor, this.codecRegistry, options, spool, channelPoolConfig);
+                case CONCURRENT_BAG -> new RabbitImplConcurrentPooled(
+                        connectionGroup, executor, this.codecRegistry, options, spool, channelPoolConfig);};
         } else {
-            return new RabbitImpl(connection, executor, this.codecRegistry);
+            rabbit = new RabbitImpl(connectionGroup, executor, this.codecRegistry, options, spool);
+        }
+        if (spool != null) {
+            spool.attach(rabbit);
         }
+        return rabbit;
     }
 }
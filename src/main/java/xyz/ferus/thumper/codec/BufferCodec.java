@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.codec;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import xyz.ferus.thumper.internal.codec.CodecBuffers;
+
+/**
+ * A codec that encodes into a stream and decodes from a buffer, without creating intermediate byte arrays.
+ * <p>
+ * Thumper prefers these methods whenever a codec implements them: messages are encoded into a buffer reused by the
+ * publishing thread, and decoded straight from the delivered body. Codecs that only implement {@link Codec} keep
+ * working unchanged.
+ * @param <T> the type of object to encode and decode
+ */
+public interface BufferCodec<T> extends Codec<T> {
+
+    /**
+     * Encode an object into a stream.
+     * <p>
+     * The stream belongs to the caller, and must not be closed or retained.
+     * @param object the object to encode
+     * @param out the stream to encode the object into
+     * @throws EncodingException if the object could not be encoded
+     */
+    void encode(T object, OutputStream out) throws EncodingException;
+
+    /**
+     * Decode an object from a buffer, reading its remaining bytes.
+     * <p>
+     * The buffer may be reused once this returns, so it must not be retained by the decoded object.
+     * @param buffer the buffer to decode
+     * @return the decoded object
+     * @throws EncodingException if the buffer could not be decoded
+     */
+    T decode(ByteBuffer buffer) throws EncodingException;
+
+    /**
+     * Encode an object to a byte array, through {@link #encode(Object, OutputStream)}.
+     * @param object the object to encode
+     * @return the encoded object
+     * @throws EncodingException if the object could not be encoded
+     */
+    @Override
+    default byte[] encode(T object) throws EncodingException {
+        return CodecBuffers.encode(this, object);
+    }
+
+    /**
+     * Decode a byte array to an object, through {@link #decode(ByteBuffer)}.
+     * @param bytes the byte array to decode
+     * @return the decoded object
+     * @throws EncodingException if the byte array could not be decoded
+     */
+    @Override
+    default T decode(byte[] bytes) throws EncodingException {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+}
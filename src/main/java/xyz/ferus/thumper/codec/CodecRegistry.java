@@ -33,6 +33,11 @@ public interface CodecRegistry {
 
     /**
      * Get a codec for the given type.
+     * <p>
+     * If nothing is registered for the type itself, its superclasses and then its interfaces are tried, so
+     * subclasses and proxies of a registered type can be encoded with that type's codec. Such a codec fails to
+     * decode anything that is not an instance of the requested type. Resolutions, including misses, are cached
+     * until the next codec or factory is registered.
      * @param type the type to get a codec for
      * @return the codec
      * @param <T> the type of object to encode and decode
@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+import java.util.Map;
+import xyz.ferus.thumper.RabbitException;
+
+/**
+ * An exception thrown when some of the messages in a batch could not be published.
+ */
+public class BatchPublishException extends RabbitException {
+
+    /**
+     * The failures, keyed by the index of the message in the batch.
+     */
+    private final Map<Integer, Throwable> failures;
+
+    /**
+     * Create a new BatchPublishException.
+     * @param size the number of messages in the batch
+     * @param failures the failures, keyed by the index of the message in the batch
+     */
+    public BatchPublishException(int size, Map<Integer, Throwable> failures) {
+        super("Failed to publish " + failures.size() + " of " + size + " messages.");
+        this.failures = Map.copyOf(failures);
+        this.failures.values().stream().distinct().forEach(this::addSuppressed);
+    }
+
+    /**
+     * The failures, keyed by the index of the message in the batch.
+     * @return the failures
+     */
+    public Map<Integer, Throwable> failures() {
+        return this.failures;
+    }
+}
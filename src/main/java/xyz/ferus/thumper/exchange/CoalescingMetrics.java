@@ -0,0 +1,47 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the publish coalescing metrics of an exchange.
+ * @param batches the number of batches flushed
+ * @param messages the number of messages flushed
+ * @param pending the number of messages waiting to be flushed
+ * @param averageFlushLatency the average time between the first message of a batch being published and the batch being written
+ * @param maxFlushLatency the longest time between the first message of a batch being published and the batch being written
+ */
+public record CoalescingMetrics(
+        long batches, long messages, long pending, Duration averageFlushLatency, Duration maxFlushLatency) {
+
+    /**
+     * The average number of messages per flushed batch.
+     * @return the average batch size
+     */
+    public double averageBatchSize() {
+        return this.batches == 0 ? 0 : (double) this.messages / this.batches;
+    }
+}
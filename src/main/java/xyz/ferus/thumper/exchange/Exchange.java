@@ -25,6 +25,7 @@
 package xyz.ferus.thumper.exchange;
 
 import java.util.concurrent.CompletableFuture;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * An exchange is a named entity that accepts messages from producers and routes them to message queues based on rules.
@@ -66,4 +67,26 @@ public interface Exchange extends AutoCloseable {
      * @return a future that completes when the exchange has been deleted
      */
     CompletableFuture<Void> delete(boolean ifUnused);
+
+    /**
+     * Gets a snapshot of the publish coalescing metrics of this exchange.
+     * @return the coalescing metrics, or {@code null} if publish coalescing is not enabled
+     */
+    @Nullable CoalescingMetrics coalescingMetrics();
+
+    /**
+     * Limits the rate at which this exchange publishes, replacing any limit already set.
+     * <p>
+     * Publishes over the limit are held back, without holding a thread, and their futures complete once they have
+     * been let through and published. Publishes already held back by a replaced limit are still let through by it.
+     * @param limit the rate limit, or {@code null} to remove the limit
+     * @see xyz.ferus.thumper.RabbitBuilder#rateLimit(RateLimit)
+     */
+    void rateLimit(@Nullable RateLimit limit);
+
+    /**
+     * Gets a snapshot of the rate limiting metrics of this exchange.
+     * @return the rate limiting metrics, or {@code null} if this exchange is not rate limited
+     */
+    @Nullable RateLimitMetrics rateLimitMetrics();
 }
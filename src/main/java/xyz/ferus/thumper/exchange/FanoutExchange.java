@@ -24,8 +24,11 @@
  */
 package xyz.ferus.thumper.exchange;
 
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.codec.EncodingException;
 import xyz.ferus.thumper.queue.FanoutQueue;
 
 /**
@@ -38,7 +41,84 @@ public interface FanoutExchange extends Exchange {
      * @param data the data to publish
      * @return a future that completes when the message has been published
      */
-    CompletableFuture<@Nullable Void> publish(Object data);
+    default CompletableFuture<@Nullable Void> publish(Object data) {
+        return publish(data, PublishOptions.defaultOptions());
+    }
+
+    /**
+     * Publishes a message to this exchange with the given properties.
+     * @param data the data to publish
+     * @param properties the properties to publish the message with
+     * @return a future that completes when the message has been published
+     */
+    default CompletableFuture<@Nullable Void> publish(Object data, MessageProperties properties) {
+        return publish(data, PublishOptions.of(properties));
+    }
+
+    /**
+     * Publishes a message to this exchange with the given options.
+     * @param data the data to publish
+     * @param options the options to publish the message with
+     * @return a future that completes when the message has been published, or fails with an
+     *         {@link UnroutableMessageException} if it was mandatory and no queue is bound
+     */
+    CompletableFuture<@Nullable Void> publish(Object data, PublishOptions options);
+
+    /**
+     * Creates a publisher for messages of the given type, bound to this exchange.
+     * @param type the type of messages to publish
+     * @return the publisher
+     * @param <T> the type of messages to publish
+     * @throws EncodingException if no codec could be found for the given type
+     */
+    default <T> Publisher<T> publisher(Class<T> type) throws EncodingException {
+        return publisher(type, PublishOptions.defaultOptions());
+    }
+
+    /**
+     * Creates a publisher for messages of the given type, bound to this exchange, that publishes with the given
+     * properties.
+     * @param type the type of messages to publish
+     * @param properties the properties to publish messages with
+     * @return the publisher
+     * @param <T> the type of messages to publish
+     * @throws EncodingException if no codec could be found for the given type
+     */
+    default <T> Publisher<T> publisher(Class<T> type, MessageProperties properties) throws EncodingException {
+        return publisher(type, PublishOptions.of(properties));
+    }
+
+    /**
+     * Creates a publisher for messages of the given type, bound to this exchange, that publishes with the given
+     * options.
+     * @param type the type of messages to publish
+     * @param options the options to publish messages with
+     * @return the publisher
+     * @param <T> the type of messages to publish
+     * @throws EncodingException if no codec could be found for the given type
+     */
+    <T> Publisher<T> publisher(Class<T> type, PublishOptions options) throws EncodingException;
+
+    /**
+     * Publishes a batch of messages to this exchange.
+     * <p>
+     * The messages are encoded and published in order on a single channel. If any message fails to publish, the
+     * future completes with a {@link BatchPublishException} describing which messages failed. If a message cannot be
+     * encoded, none of the batch is published and the exception reports only that message.
+     * @param data the data to publish
+     * @return a future that completes when every message has been published
+     */
+    CompletableFuture<@Nullable Void> publishAll(Collection<?> data);
+
+    /**
+     * Publishes a batch of messages to this exchange.
+     * @param data the data to publish
+     * @return a future that completes when every message has been published
+     * @see #publishAll(Collection)
+     */
+    default CompletableFuture<@Nullable Void> publishAll(Stream<?> data) {
+        return publishAll(data.toList());
+    }
 
     /**
      * Creates a new queue that is bound to this exchange.
@@ -0,0 +1,342 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+import com.rabbitmq.client.AMQP;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Immutable AMQP properties to publish a message with.
+ * <p>
+ * Properties are built once and can be shared by any number of publishes without being copied. Fields that differ
+ * per message, such as ids and timestamps, can be overlaid on a shared instance with the {@code with} methods, which
+ * leave the original untouched.
+ */
+public final class MessageProperties {
+
+    private static final MessageProperties EMPTY = new MessageProperties(new AMQP.BasicProperties());
+
+    /**
+     * The underlying AMQP properties.
+     */
+    private final AMQP.BasicProperties properties;
+
+    private MessageProperties(AMQP.BasicProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns properties with no fields set.
+     * @return the empty properties
+     */
+    public static MessageProperties empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns a builder for creating message properties.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder(new AMQP.BasicProperties.Builder());
+    }
+
+    /**
+     * Returns a builder initialized with these properties.
+     * @return the builder
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder(this.properties.builder());
+        @Nullable Map<String, Object> headers = this.properties.getHeaders();
+        if (headers != null) {
+            builder.headers(headers);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns a copy of these properties with the given message id.
+     * @param messageId the message id
+     * @return the new properties
+     */
+    public MessageProperties withMessageId(String messageId) {
+        return new MessageProperties(
+                this.properties.builder().messageId(messageId).build());
+    }
+
+    /**
+     * Returns a copy of these properties with the given correlation id.
+     * @param correlationId the correlation id
+     * @return the new properties
+     */
+    public MessageProperties withCorrelationId(String correlationId) {
+        return new MessageProperties(
+                this.properties.builder().correlationId(correlationId).build());
+    }
+
+    /**
+     * Returns a copy of these properties with the given timestamp.
+     * @param timestamp the timestamp
+     * @return the new properties
+     */
+    public MessageProperties withTimestamp(Instant timestamp) {
+        return new MessageProperties(
+                this.properties.builder().timestamp(Date.from(timestamp)).build());
+    }
+
+    /**
+     * Returns a copy of these properties with the given header added, or replaced if already present.
+     * @param key the key of the header
+     * @param value the value of the header
+     * @return the new properties
+     */
+    public MessageProperties withHeader(String key, Object value) {
+        @Nullable Map<String, Object> headers = this.properties.getHeaders();
+        Map<String, Object> merged = headers == null ? new HashMap<>(2) : new HashMap<>(headers);
+        merged.put(key, value);
+        return new MessageProperties(this.properties
+                .builder()
+                .headers(Collections.unmodifiableMap(merged))
+                .build());
+    }
+
+    /**
+     * The message id, if set.
+     * @return the message id
+     */
+    public @Nullable String messageId() {
+        return this.properties.getMessageId();
+    }
+
+    /**
+     * The headers, if set.
+     * @return an unmodifiable view of the headers
+     */
+    public @Nullable Map<String, Object> headers() {
+        return this.properties.getHeaders();
+    }
+
+    /**
+     * The underlying AMQP properties. These must not be modified.
+     * @return the AMQP properties
+     */
+    public AMQP.BasicProperties basicProperties() {
+        return this.properties;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        return o instanceof MessageProperties other && this.properties.equals(other.properties);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.properties.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "MessageProperties" + this.properties;
+    }
+
+    /**
+     * A builder for creating message properties.
+     */
+    public static class Builder {
+
+        /**
+         * The underlying AMQP properties builder.
+         */
+        private final AMQP.BasicProperties.Builder builder;
+
+        /**
+         * The headers.
+         */
+        private final Map<String, Object> headers;
+
+        private Builder(AMQP.BasicProperties.Builder builder) {
+            this.builder = builder;
+            this.headers = new HashMap<>();
+        }
+
+        /**
+         * Sets the content type.
+         * @param contentType the MIME content type
+         * @return this builder
+         */
+        public Builder contentType(String contentType) {
+            this.builder.contentType(contentType);
+            return this;
+        }
+
+        /**
+         * Sets the content encoding.
+         * @param contentEncoding the MIME content encoding
+         * @return this builder
+         */
+        public Builder contentEncoding(String contentEncoding) {
+            this.builder.contentEncoding(contentEncoding);
+            return this;
+        }
+
+        /**
+         * Sets whether the message should survive a broker restart, if the queue it is routed to does.
+         * @param persistent whether the message is persistent
+         * @return this builder
+         */
+        public Builder persistent(boolean persistent) {
+            this.builder.deliveryMode(persistent ? 2 : 1);
+            return this;
+        }
+
+        /**
+         * Sets the priority.
+         * @param priority the priority, from 0 to 9
+         * @return this builder
+         */
+        public Builder priority(int priority) {
+            this.builder.priority(priority);
+            return this;
+        }
+
+        /**
+         * Sets the correlation id.
+         * @param correlationId the correlation id
+         * @return this builder
+         */
+        public Builder correlationId(String correlationId) {
+            this.builder.correlationId(correlationId);
+            return this;
+        }
+
+        /**
+         * Sets the queue to reply to.
+         * @param replyTo the name of the queue to reply to
+         * @return this builder
+         */
+        public Builder replyTo(String replyTo) {
+            this.builder.replyTo(replyTo);
+            return this;
+        }
+
+        /**
+         * Sets how long the message may wait in a queue before it expires.
+         * @param expiration the time to live
+         * @return this builder
+         */
+        public Builder expiration(Duration expiration) {
+            this.builder.expiration(Long.toString(expiration.toMillis()));
+            return this;
+        }
+
+        /**
+         * Sets the message id.
+         * @param messageId the message id
+         * @return this builder
+         */
+        public Builder messageId(String messageId) {
+            this.builder.messageId(messageId);
+            return this;
+        }
+
+        /**
+         * Sets the timestamp.
+         * @param timestamp the timestamp
+         * @return this builder
+         */
+        public Builder timestamp(Instant timestamp) {
+            this.builder.timestamp(Date.from(timestamp));
+            return this;
+        }
+
+        /**
+         * Sets the message type.
+         * @param type the message type
+         * @return this builder
+         */
+        public Builder type(String type) {
+            this.builder.type(type);
+            return this;
+        }
+
+        /**
+         * Sets the id of the user that published the message.
+         * @param userId the user id
+         * @return this builder
+         */
+        public Builder userId(String userId) {
+            this.builder.userId(userId);
+            return this;
+        }
+
+        /**
+         * Sets the id of the application that published the message.
+         * @param appId the application id
+         * @return this builder
+         */
+        public Builder appId(String appId) {
+            this.builder.appId(appId);
+            return this;
+        }
+
+        /**
+         * Sets the headers, replacing any already set.
+         * @param headers the headers
+         * @return this builder
+         */
+        public Builder headers(Map<String, Object> headers) {
+            this.headers.clear();
+            this.headers.putAll(headers);
+            return this;
+        }
+
+        /**
+         * Sets a header.
+         * @param key the key of the header
+         * @param value the value of the header
+         * @return this builder
+         */
+        public Builder header(String key, Object value) {
+            this.headers.put(key, value);
+            return this;
+        }
+
+        /**
+         * Builds the message properties.
+         * @return the message properties
+         */
+        public MessageProperties build() {
+            this.builder.headers(
+                    this.headers.isEmpty() ? null : Collections.unmodifiableMap(new HashMap<>(this.headers)));
+            return new MessageProperties(this.builder.build());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+/**
+ * Options to publish a message with.
+ * @param properties the properties to publish the message with
+ * @param mandatory whether the publish fails with an {@link UnroutableMessageException} if the message could not be
+ *                  routed to any queue, rather than being silently dropped
+ * @param priority the lane the message is queued and sent in
+ */
+public record PublishOptions(MessageProperties properties, boolean mandatory, PublishPriority priority) {
+
+    private static final PublishOptions DEFAULT =
+            new PublishOptions(MessageProperties.empty(), false, PublishPriority.NORMAL);
+
+    /**
+     * Returns the default options, which publish without properties and are not mandatory.
+     * @return the default options
+     */
+    public static PublishOptions defaultOptions() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns options that publish with the given properties.
+     * @param properties the properties to publish the message with
+     * @return the options
+     */
+    public static PublishOptions of(MessageProperties properties) {
+        return properties == MessageProperties.empty()
+                ? DEFAULT
+                : new PublishOptions(properties, false, PublishPriority.NORMAL);
+    }
+
+    /**
+     * Returns a copy of these options with the given properties.
+     * @param properties the properties to publish the message with
+     * @return the new options
+     */
+    public PublishOptions withProperties(MessageProperties properties) {
+        return new PublishOptions(properties, this.mandatory, this.priority);
+    }
+
+    /**
+     * Returns a builder for creating publish options.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for creating publish options.
+     */
+    public static class Builder {
+
+        /**
+         * The properties to publish the message with.
+         */
+        private MessageProperties properties;
+
+        /**
+         * Whether the message must be routed to a queue.
+         */
+        private boolean mandatory;
+
+        /**
+         * The lane the message is queued and sent in.
+         */
+        private PublishPriority priority;
+
+        private Builder() {
+            this.properties = MessageProperties.empty();
+            this.mandatory = false;
+            this.priority = PublishPriority.NORMAL;
+        }
+
+        /**
+         * Sets the properties to publish the message with.
+         * @param properties the properties to publish the message with
+         * @return this builder
+         */
+        public Builder properties(MessageProperties properties) {
+            this.properties = properties;
+            return this;
+        }
+
+        /**
+         * Sets whether the message must be routed to a queue.
+         * <p>
+         * A mandatory message that cannot be routed is returned by the broker, and its publish fails with an
+         * {@link UnroutableMessageException}. With publisher confirms enabled the publish completes when the broker
+         * confirms it; without them, it completes once the return window configured on the builder has passed.
+         * @param mandatory whether the message must be routed to a queue
+         * @return this builder
+         */
+        public Builder mandatory(boolean mandatory) {
+            this.mandatory = mandatory;
+            return this;
+        }
+
+        /**
+         * Sets the lane the message is queued and sent in.
+         * @param priority the priority of the publish
+         * @return this builder
+         */
+        public Builder priority(PublishPriority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Builds the publish options.
+         * @return the publish options
+         */
+        public PublishOptions build() {
+            return new PublishOptions(this.properties, this.mandatory, this.priority);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+import java.util.concurrent.CompletableFuture;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A publisher bound to an exchange, a routing key and the codec for one type of message.
+ * <p>
+ * Everything but the message itself is resolved when the publisher is created, so publishing through it does no
+ * codec lookup. Publishers are thread-safe and meant to be created once and reused.
+ * @param <T> the type of messages to publish
+ */
+public interface Publisher<T> {
+
+    /**
+     * Publishes a message.
+     * @param message the message to publish
+     * @return a future that completes when the message has been published
+     */
+    CompletableFuture<@Nullable Void> publish(T message);
+
+    /**
+     * Publishes a message with the given properties instead of this publisher's.
+     * <p>
+     * Per-message fields are typically overlaid on this publisher's properties, for example
+     * {@code publisher.publish(message, publisher.properties().withMessageId(id))}.
+     * @param message the message to publish
+     * @param properties the properties to publish the message with
+     * @return a future that completes when the message has been published
+     */
+    CompletableFuture<@Nullable Void> publish(T message, MessageProperties properties);
+
+    /**
+     * The properties messages are published with by default.
+     * @return the properties
+     */
+    MessageProperties properties();
+
+    /**
+     * Returns a subscriber that publishes every message it receives through this publisher, for use with Reactive
+     * Streams.
+     * <p>
+     * The subscriber keeps at most {@code maxInFlight} publishes outstanding, and requests another message each time
+     * one completes, so a slow broker slows the upstream publisher down. With publisher confirms enabled, a publish
+     * completes once it has been confirmed. The first failed publish cancels the upstream subscription.
+     * @param maxInFlight the maximum number of publishes outstanding at once
+     * @return the subscriber
+     */
+    PublishingSubscriber<T> subscriber(int maxInFlight);
+}
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+/**
+ * A limit on the rate at which an exchange publishes, enforced with a token bucket per dimension.
+ * <p>
+ * Each bucket refills continuously at its rate and holds at most its burst, so up to a burst of messages or bytes can
+ * be published at once after a quiet period, while the long-run rate never exceeds the limit.
+ * @param messagesPerSecond the number of messages that may be published per second
+ * @param messageBurst the number of messages that may be published at once
+ * @param bytesPerSecond the number of encoded bytes that may be published per second
+ * @param byteBurst the number of encoded bytes that may be published at once
+ */
+public record RateLimit(double messagesPerSecond, long messageBurst, double bytesPerSecond, long byteBurst) {
+
+    /**
+     * Create a new RateLimit.
+     * @param messagesPerSecond the number of messages that may be published per second
+     * @param messageBurst the number of messages that may be published at once
+     * @param bytesPerSecond the number of encoded bytes that may be published per second
+     * @param byteBurst the number of encoded bytes that may be published at once
+     */
+    public RateLimit {
+        if (!(messagesPerSecond > 0) || !(bytesPerSecond > 0)) {
+            throw new IllegalArgumentException(
+                    "Rates must be positive, got " + messagesPerSecond + " and " + bytesPerSecond);
+        }
+        if (messageBurst < 1 || byteBurst < 1) {
+            throw new IllegalArgumentException("Bursts must be at least 1, got " + messageBurst + " and " + byteBurst);
+        }
+    }
+
+    /**
+     * Returns a limit on the number of messages published per second.
+     * @param perSecond the number of messages that may be published per second
+     * @param burst the number of messages that may be published at once
+     * @return the rate limit
+     */
+    public static RateLimit messages(double perSecond, long burst) {
+        return new RateLimit(perSecond, burst, Double.POSITIVE_INFINITY, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a limit on the number of encoded bytes published per second.
+     * @param perSecond the number of bytes that may be published per second
+     * @param burst the number of bytes that may be published at once
+     * @return the rate limit
+     */
+    public static RateLimit bytes(double perSecond, long burst) {
+        return new RateLimit(Double.POSITIVE_INFINITY, Long.MAX_VALUE, perSecond, burst);
+    }
+
+    /**
+     * Returns a copy of this limit that also limits the number of messages published per second.
+     * @param perSecond the number of messages that may be published per second
+     * @param burst the number of messages that may be published at once
+     * @return the new rate limit
+     */
+    public RateLimit withMessages(double perSecond, long burst) {
+        return new RateLimit(perSecond, burst, this.bytesPerSecond, this.byteBurst);
+    }
+
+    /**
+     * Returns a copy of this limit that also limits the number of encoded bytes published per second.
+     * @param perSecond the number of bytes that may be published per second
+     * @param burst the number of bytes that may be published at once
+     * @return the new rate limit
+     */
+    public RateLimit withBytes(double perSecond, long burst) {
+        return new RateLimit(this.messagesPerSecond, this.messageBurst, perSecond, burst);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the rate limiting metrics of an exchange.
+ * @param limit the rate limit being enforced
+ * @param waiting the number of publishes currently held back by the limit
+ * @param throttled the number of publishes that have been held back
+ * @param totalDelay the total time publishes have been held back for
+ * @param availableMessages the number of messages that could be published at once right now
+ * @param availableBytes the number of encoded bytes that could be published at once right now
+ */
+public record RateLimitMetrics(
+        RateLimit limit,
+        int waiting,
+        long throttled,
+        Duration totalDelay,
+        double availableMessages,
+        double availableBytes) {
+
+    /**
+     * Whether publishes are currently being held back.
+     * @return whether the exchange is throttled
+     */
+    public boolean throttling() {
+        return this.waiting > 0;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+/**
+ * A message paired with the routing key it should be published with.
+ * @param routingKey the routing key to use
+ * @param data the data to publish
+ * @param options the options to publish the message with
+ */
+public record RoutedMessage(String routingKey, Object data, PublishOptions options) {
+
+    /**
+     * Creates a routed message with the default options.
+     * @param routingKey the routing key to use
+     * @param data the data to publish
+     */
+    public RoutedMessage(String routingKey, Object data) {
+        this(routingKey, data, PublishOptions.defaultOptions());
+    }
+
+    /**
+     * Creates a routed message.
+     * @param routingKey the routing key to use
+     * @param data the data to publish
+     * @return the routed message
+     */
+    public static RoutedMessage of(String routingKey, Object data) {
+        return new RoutedMessage(routingKey, data);
+    }
+
+    /**
+     * Creates a routed message.
+     * @param routingKey the routing key to use
+     * @param data the data to publish
+     * @param properties the properties to publish the message with
+     * @return the routed message
+     */
+    public static RoutedMessage of(String routingKey, Object data, MessageProperties properties) {
+        return new RoutedMessage(routingKey, data, PublishOptions.of(properties));
+    }
+
+    /**
+     * Creates a routed message.
+     * @param routingKey the routing key to use
+     * @param data the data to publish
+     * @param options the options to publish the message with
+     * @return the routed message
+     */
+    public static RoutedMessage of(String routingKey, Object data, PublishOptions options) {
+        return new RoutedMessage(routingKey, data, options);
+    }
+}
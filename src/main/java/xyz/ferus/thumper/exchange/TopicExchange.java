@@ -24,8 +24,11 @@
  */
 package xyz.ferus.thumper.exchange;
 
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.codec.EncodingException;
 import xyz.ferus.thumper.queue.TopicQueue;
 
 /**
@@ -39,7 +42,90 @@ public interface TopicExchange extends Exchange {
      * @param data the data to publish
      * @return a future that completes when the message has been published
      */
-    CompletableFuture<@Nullable Void> publish(String routingKey, Object data);
+    default CompletableFuture<@Nullable Void> publish(String routingKey, Object data) {
+        return publish(routingKey, data, PublishOptions.defaultOptions());
+    }
+
+    /**
+     * Publishes a message to this exchange with the given properties.
+     * @param routingKey the routing key to use
+     * @param data the data to publish
+     * @param properties the properties to publish the message with
+     * @return a future that completes when the message has been published
+     */
+    default CompletableFuture<@Nullable Void> publish(String routingKey, Object data, MessageProperties properties) {
+        return publish(routingKey, data, PublishOptions.of(properties));
+    }
+
+    /**
+     * Publishes a message to this exchange with the given options.
+     * @param routingKey the routing key to use
+     * @param data the data to publish
+     * @param options the options to publish the message with
+     * @return a future that completes when the message has been published, or fails with an
+     *         {@link UnroutableMessageException} if it was mandatory and could not be routed
+     */
+    CompletableFuture<@Nullable Void> publish(String routingKey, Object data, PublishOptions options);
+
+    /**
+     * Creates a publisher for messages of the given type, bound to this exchange and the given routing key.
+     * @param type the type of messages to publish
+     * @param routingKey the routing key to use
+     * @return the publisher
+     * @param <T> the type of messages to publish
+     * @throws EncodingException if no codec could be found for the given type
+     */
+    default <T> Publisher<T> publisher(Class<T> type, String routingKey) throws EncodingException {
+        return publisher(type, routingKey, PublishOptions.defaultOptions());
+    }
+
+    /**
+     * Creates a publisher for messages of the given type, bound to this exchange and the given routing key, that
+     * publishes with the given properties.
+     * @param type the type of messages to publish
+     * @param routingKey the routing key to use
+     * @param properties the properties to publish messages with
+     * @return the publisher
+     * @param <T> the type of messages to publish
+     * @throws EncodingException if no codec could be found for the given type
+     */
+    default <T> Publisher<T> publisher(Class<T> type, String routingKey, MessageProperties properties)
+            throws EncodingException {
+        return publisher(type, routingKey, PublishOptions.of(properties));
+    }
+
+    /**
+     * Creates a publisher for messages of the given type, bound to this exchange and the given routing key, that
+     * publishes with the given options.
+     * @param type the type of messages to publish
+     * @param routingKey the routing key to use
+     * @param options the options to publish messages with
+     * @return the publisher
+     * @param <T> the type of messages to publish
+     * @throws EncodingException if no codec could be found for the given type
+     */
+    <T> Publisher<T> publisher(Class<T> type, String routingKey, PublishOptions options) throws EncodingException;
+
+    /**
+     * Publishes a batch of messages to this exchange.
+     * <p>
+     * The messages are encoded and published in order on a single channel. If any message fails to publish, the
+     * future completes with a {@link BatchPublishException} describing which messages failed. If a message cannot be
+     * encoded, none of the batch is published and the exception reports only that message.
+     * @param messages the messages to publish
+     * @return a future that completes when every message has been published
+     */
+    CompletableFuture<@Nullable Void> publishAll(Collection<RoutedMessage> messages);
+
+    /**
+     * Publishes a batch of messages to this exchange.
+     * @param messages the messages to publish
+     * @return a future that completes when every message has been published
+     * @see #publishAll(Collection)
+     */
+    default CompletableFuture<@Nullable Void> publishAll(Stream<RoutedMessage> messages) {
+        return publishAll(messages.toList());
+    }
 
     /**
      * Publishes a message to this exchange.
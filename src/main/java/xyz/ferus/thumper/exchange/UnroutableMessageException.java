@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.exchange;
+
+import xyz.ferus.thumper.RabbitException;
+
+/**
+ * An exception thrown when a mandatory message was returned by the broker because it could not be routed to any
+ * queue.
+ */
+public class UnroutableMessageException extends RabbitException {
+
+    /**
+     * The reply code given by the broker.
+     */
+    private final int replyCode;
+
+    /**
+     * The exchange the message was published to.
+     */
+    private final String exchange;
+
+    /**
+     * The routing key the message was published with.
+     */
+    private final String routingKey;
+
+    /**
+     * Create a new UnroutableMessageException.
+     * @param replyCode the reply code given by the broker
+     * @param replyText the reply text given by the broker
+     * @param exchange the exchange the message was published to
+     * @param routingKey the routing key the message was published with
+     */
+    public UnroutableMessageException(int replyCode, String replyText, String exchange, String routingKey) {
+        super("The message published to exchange '" + exchange + "' with routing key '" + routingKey
+                + "' was returned: " + replyCode + " " + replyText);
+        this.replyCode = replyCode;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+    }
+
+    /**
+     * The reply code given by the broker.
+     * @return the reply code
+     */
+    public int replyCode() {
+        return this.replyCode;
+    }
+
+    /**
+     * The exchange the message was published to.
+     * @return the exchange
+     */
+    public String exchange() {
+        return this.exchange;
+    }
+
+    /**
+     * The routing key the message was published with.
+     * @return the routing key
+     */
+    public String routingKey() {
+        return this.routingKey;
+    }
+}
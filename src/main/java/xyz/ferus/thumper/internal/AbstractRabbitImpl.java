@@ -24,23 +24,34 @@
  */
 package xyz.ferus.thumper.internal;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownSignalException;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import xyz.ferus.thumper.ChannelConsumer;
 import xyz.ferus.thumper.ChannelFunction;
+import xyz.ferus.thumper.ChannelMetrics;
 import xyz.ferus.thumper.Rabbit;
 import xyz.ferus.thumper.RabbitException;
 import xyz.ferus.thumper.codec.CodecRegistry;
 import xyz.ferus.thumper.exchange.DirectExchange;
 import xyz.ferus.thumper.exchange.Exchange;
 import xyz.ferus.thumper.exchange.FanoutExchange;
+import xyz.ferus.thumper.exchange.PublishPriority;
 import xyz.ferus.thumper.exchange.TopicExchange;
 import xyz.ferus.thumper.internal.exchange.DirectExchangeImpl;
 import xyz.ferus.thumper.internal.exchange.FanoutExchangeImpl;
@@ -50,20 +61,90 @@ import xyz.ferus.thumper.internal.util.ExceptionCatcher;
 
 public abstract class AbstractRabbitImpl implements Rabbit {
 
-    private final Connection connection;
+    private final ConnectionGroup connections;
     private final Executor executor;
     private final CodecRegistry codecRegistry;
+    private final RabbitOptions options;
     private final List<Exchange> exchanges;
+    private final Map<Channel, PublisherConfirms> confirms;
+    private final PublishReturns returns;
+    private final PublishLanes lanes;
+    private final Object schedulerLock = new Object();
+    private final AtomicInteger activeLeases = new AtomicInteger();
+    private final LongAdder leased = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
 
-    protected AbstractRabbitImpl(Connection connection, Executor executor, CodecRegistry codecRegistry) {
-        this.connection = connection;
+    @Nullable private volatile ScheduledExecutorService scheduler = null;
+
+    @Nullable private final ChannelLeakDetector leakDetector;
+
+    @Nullable private final PublishLimiter publishLimiter;
+
+    @Nullable private final PublishSpool spool;
+
+    protected AbstractRabbitImpl(
+            ConnectionGroup connections,
+            Executor executor,
+            CodecRegistry codecRegistry,
+            RabbitOptions options,
+            @Nullable PublishSpool spool) {
+        this.connections = connections;
         this.executor = executor;
         this.codecRegistry = codecRegistry;
+        this.options = options;
         this.exchanges = new CopyOnWriteArrayList<>();
+        this.confirms = new ConcurrentHashMap<>();
+
+        @Nullable Duration leakDetectionThreshold = options.leakDetectionThreshold();
+        this.leakDetector =
+                leakDetectionThreshold == null ? null : new ChannelLeakDetector(leakDetectionThreshold, scheduler());
+
+        if (options.maxInFlightMessages() < Integer.MAX_VALUE || options.maxInFlightBytes() < Long.MAX_VALUE) {
+            this.publishLimiter = new PublishLimiter(
+                    options.maxInFlightMessages(), options.maxInFlightBytes(), options.backpressurePolicy());
+            connections.connections().forEach(this.publishLimiter::attach);
+        } else {
+            this.publishLimiter = null;
+        }
+
+        this.returns = new PublishReturns(options.returnWindow().toNanos(), this::scheduler);
+        this.lanes = new PublishLanes(this, options.highPriorityChannels(), options.bulkConcurrency());
+        this.spool = spool;
+    }
+
+    public ConnectionGroup connections() {
+        return this.connections;
+    }
+
+    public RabbitOptions options() {
+        return this.options;
+    }
+
+    public @Nullable PublishLimiter publishLimiter() {
+        return this.publishLimiter;
+    }
+
+    public @Nullable PublishSpool spool() {
+        return this.spool;
+    }
+
+    public Executor executor() {
+        return this.executor;
     }
 
-    public Connection connection() {
-        return this.connection;
+    public ScheduledExecutorService scheduler() {
+        @Nullable ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler == null) {
+            synchronized (this.schedulerLock) {
+                scheduler = this.scheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(SharedThreadFactory.INSTANCE);
+                    this.scheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
     }
 
     @Override
@@ -74,35 +155,163 @@ public abstract class AbstractRabbitImpl implements Rabbit {
     @Override
     public <R> CompletableFuture<R> transform(ChannelFunction<R> function) {
         CompletableFuture<R> future = new CompletableFuture<>();
+        // Captured on the calling thread, so a leak report points at the code that requested the channel.
+        @Nullable Throwable origin = this.leakDetector == null ? null : this.leakDetector.captureOrigin();
         this.executor.execute(() -> {
+            Channel channel;
             try {
-                Channel channel = provideChannel();
-                R result = function.apply(channel);
-                future.complete(result);
+                channel = provideChannel();
             } catch (Exception e) {
                 future.completeExceptionally(e);
+                return;
+            }
+
+            this.leased.increment();
+            this.activeLeases.incrementAndGet();
+            ChannelLeakDetector.@Nullable Lease lease =
+                    this.leakDetector == null ? null : this.leakDetector.acquired(channel, origin);
+            R result = null;
+            @Nullable Exception failure = null;
+            try {
+                result = function.apply(channel);
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                if (lease != null) {
+                    this.leakDetector.released(lease);
+                }
+                this.activeLeases.decrementAndGet();
+                releaseChannel(channel, failure);
+            }
+
+            if (failure == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(failure);
             }
         });
         return future;
     }
 
+    public <R> CompletableFuture<R> transform(PublishPriority priority, ChannelFunction<R> function) {
+        return this.lanes.transform(priority, function);
+    }
+
     @Override
     public CompletableFuture<@Nullable Void> execute(ChannelConsumer consumer) {
-        CompletableFuture<@Nullable Void> future = new CompletableFuture<>();
+        return transform(channel -> {
+            consumer.accept(channel);
+            return null;
+        });
+    }
+
+    // The channel belongs to the caller from here on, and is closed if the function fails.
+    public <R> CompletableFuture<R> transformOnNewChannel(ChannelFunction<R> function) {
+        CompletableFuture<R> future = new CompletableFuture<>();
         this.executor.execute(() -> {
+            @Nullable Channel channel = null;
             try {
-                Channel channel = provideChannel();
-                consumer.accept(channel);
-                future.complete(null);
+                channel = createConsumerChannel();
+                future.complete(function.apply(channel));
             } catch (Exception e) {
+                if (channel != null && channel.isOpen()) {
+                    try {
+                        channel.close();
+                    } catch (Exception closeFailure) {
+                        e.addSuppressed(closeFailure);
+                    }
+                }
                 future.completeExceptionally(e);
             }
         });
         return future;
     }
 
+    public CompletableFuture<@Nullable Void> publish(
+            Channel channel,
+            String exchange,
+            String routingKey,
+            boolean mandatory,
+            AMQP.@Nullable BasicProperties properties,
+            byte[] body)
+            throws IOException {
+        @Nullable PublisherConfirms confirms = this.confirms.get(channel);
+        if (!mandatory) {
+            if (confirms != null) {
+                return confirms.publish(exchange, routingKey, false, properties, body);
+            }
+            channel.basicPublish(exchange, routingKey, properties, body);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<@Nullable Void> future = new CompletableFuture<>();
+        long id = this.returns.register(future);
+        AMQP.BasicProperties tagged = PublishReturns.tag(properties, id);
+        try {
+            if (confirms != null) {
+                confirms.publish(exchange, routingKey, true, tagged, body)
+                        .whenComplete((ignored, error) -> this.returns.settle(id, error));
+            } else {
+                channel.basicPublish(exchange, routingKey, true, tagged, body);
+                this.returns.settleAfterWindow(id);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.returns.discard(id);
+            throw e;
+        }
+        return future;
+    }
+
+    protected Channel createChannel() throws IOException {
+        Channel channel = newChannel();
+        channel.addReturnListener(this.returns);
+        if (this.options.publisherConfirms()) {
+            this.confirms.put(channel, PublisherConfirms.enable(channel));
+            channel.addShutdownListener(cause -> this.confirms.remove(channel));
+        }
+        return channel;
+    }
+
+    protected Channel createConsumerChannel() throws IOException {
+        return track(this.connections.createConsumerChannel());
+    }
+
+    private Channel newChannel() throws IOException {
+        return track(this.connections.createChannel());
+    }
+
+    private Channel track(Channel channel) {
+        this.created.increment();
+        channel.addShutdownListener(cause -> this.destroyed.increment());
+        return channel;
+    }
+
     protected abstract Channel provideChannel() throws RabbitException;
 
+    protected void releaseChannel(Channel channel, @Nullable Exception failure) {}
+
+    protected static boolean isChannelFailure(@Nullable Throwable failure) {
+        for (@Nullable Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ShutdownSignalException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected ChannelMetrics channelMetrics(int idle, int waiting, Duration meanLeaseWait, Duration maxLeaseWait) {
+        return new ChannelMetrics(
+                this.activeLeases.get(),
+                idle,
+                waiting,
+                this.created.sum(),
+                this.destroyed.sum(),
+                this.leased.sum(),
+                meanLeaseWait,
+                maxLeaseWait,
+                this.leakDetector == null ? 0 : this.leakDetector.leaked());
+    }
+
     protected abstract void closeInternal() throws Exception;
 
     @Override
@@ -113,13 +322,27 @@ public abstract class AbstractRabbitImpl implements Rabbit {
         this.exchanges.clear();
         exchanges.forEach(exchange -> catcher.execute(exchange::close));
 
+        catcher.execute(() -> {
+            if (this.spool != null) {
+                this.spool.close();
+            }
+        });
+        catcher.execute(this.lanes::close);
         catcher.execute(this::closeInternal);
-        catcher.execute(this.connection::close);
+        catcher.execute(this.connections::close);
+        catcher.execute(this.returns::close);
         catcher.execute(() -> {
             if (this.executor instanceof ExecutorService service) {
                 service.shutdown();
             }
         });
+        // Last, since flushes, confirms and drains still in progress while closing may schedule work on it.
+        catcher.execute(() -> {
+            @Nullable ScheduledExecutorService scheduler = this.scheduler;
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+        });
 
         try {
             catcher.validate();
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.Channel;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodically reports channel leases that have been held for longer than a threshold, along with the stack of the
+ * caller that requested them.
+ */
+public class ChannelLeakDetector {
+
+    private static final System.Logger LOGGER = System.getLogger(ChannelLeakDetector.class.getName());
+
+    private final long thresholdNanos;
+    private final Set<Lease> leases;
+    private final LongAdder leaked;
+
+    public ChannelLeakDetector(Duration threshold, ScheduledExecutorService scheduler) {
+        this.thresholdNanos = threshold.toNanos();
+        this.leases = ConcurrentHashMap.newKeySet();
+        this.leaked = new LongAdder();
+
+        long period = Math.max(this.thresholdNanos / 2, TimeUnit.MILLISECONDS.toNanos(100));
+        scheduler.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    public Throwable captureOrigin() {
+        return new Throwable("Channel lease requested here");
+    }
+
+    public Lease acquired(Channel channel, Throwable origin) {
+        Lease lease = new Lease(channel, System.nanoTime(), origin);
+        this.leases.add(lease);
+        return lease;
+    }
+
+    public void released(Lease lease) {
+        this.leases.remove(lease);
+    }
+
+    public long leaked() {
+        return this.leaked.sum();
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Lease lease : this.leases) {
+            if (!lease.reported && now - lease.acquiredNanos > this.thresholdNanos) {
+                lease.reported = true;
+                this.leaked.increment();
+                LOGGER.log(
+                        System.Logger.Level.WARNING,
+                        "Channel " + lease.channel.getChannelNumber() + " has been leased for "
+                                + TimeUnit.NANOSECONDS.toMillis(now - lease.acquiredNanos)
+                                + "ms, which may indicate a leak.",
+                        lease.origin);
+            }
+        }
+    }
+
+    public static final class Lease {
+        private final Channel channel;
+        private final long acquiredNanos;
+        private final Throwable origin;
+        private volatile boolean reported;
+
+        private Lease(Channel channel, long acquiredNanos, Throwable origin) {
+            this.channel = channel;
+            this.acquiredNanos = acquiredNanos;
+            this.origin = origin;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.Channel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A lock-free channel pool modelled on HikariCP's {@code ConcurrentBag}.
+ * <p>
+ * Each entry is claimed with a CAS on its state. Borrowers first try the channels their own thread returned most
+ * recently, then scan the shared list, then create a channel if there is room, and only then wait for a returning
+ * channel to be handed off to them.
+ */
+public class ConcurrentChannelBag implements AutoCloseable {
+
+    private static final int THREAD_LOCAL_CAPACITY = 8;
+    private static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Callable<Channel> factory;
+    private final int maxTotal;
+    private final long maxWaitNanos;
+    private final boolean blockWhenExhausted;
+    private final boolean testOnBorrow;
+    private final boolean testOnReturn;
+
+    private final List<Entry> entries;
+    private final Map<Channel, Entry> entriesByChannel;
+    private final ThreadLocal<Deque<Entry>> recentlyReturned;
+    private final SynchronousQueue<Entry> handoff;
+    private final AtomicInteger total;
+    private final AtomicInteger waiters;
+
+    private final LongAdder borrows;
+    private final LongAdder borrowWaitNanos;
+    private final AtomicLong maxBorrowWaitNanos;
+
+    private volatile boolean closed;
+
+    public ConcurrentChannelBag(Callable<Channel> factory, GenericObjectPoolConfig<Channel> config) {
+        this.factory = factory;
+        this.maxTotal = config.getMaxTotal() < 0 ? Integer.MAX_VALUE : config.getMaxTotal();
+        this.maxWaitNanos = config.getMaxWaitDuration().isNegative()
+                ? -1
+                : config.getMaxWaitDuration().toNanos();
+        this.blockWhenExhausted = config.getBlockWhenExhausted();
+        this.testOnBorrow = config.getTestOnBorrow();
+        this.testOnReturn = config.getTestOnReturn();
+        this.entries = new CopyOnWriteArrayList<>();
+        this.entriesByChannel = new ConcurrentHashMap<>();
+        this.recentlyReturned = ThreadLocal.withInitial(() -> new ArrayDeque<>(THREAD_LOCAL_CAPACITY));
+        this.handoff = new SynchronousQueue<>(true);
+        this.total = new AtomicInteger();
+        this.waiters = new AtomicInteger();
+        this.borrows = new LongAdder();
+        this.borrowWaitNanos = new LongAdder();
+        this.maxBorrowWaitNanos = new AtomicLong();
+    }
+
+    public Channel borrow() throws Exception {
+        long start = System.nanoTime();
+        try {
+            return borrowInternal(start);
+        } finally {
+            long waited = System.nanoTime() - start;
+            this.borrows.increment();
+            this.borrowWaitNanos.add(waited);
+            this.maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+    }
+
+    private Channel borrowInternal(long start) throws Exception {
+        if (this.closed) {
+            throw new IllegalStateException("The channel pool is closed.");
+        }
+
+        Deque<Entry> recent = this.recentlyReturned.get();
+        @Nullable Entry entry;
+        while ((entry = recent.pollLast()) != null) {
+            if (entry.claim() && validate(entry, this.testOnBorrow)) {
+                return entry.channel;
+            }
+        }
+
+        // Registering as a waiter before scanning means a concurrent release either shows up in the scan, or
+        // sees this waiter and hands its channel off.
+        this.waiters.incrementAndGet();
+        try {
+            while (true) {
+                for (Entry candidate : this.entries) {
+                    if (candidate.claim() && validate(candidate, this.testOnBorrow)) {
+                        return candidate.channel;
+                    }
+                }
+
+                if (reserve()) {
+                    return create();
+                }
+                if (!this.blockWhenExhausted) {
+                    throw new NoSuchElementException("The channel pool is exhausted.");
+                }
+
+                long slice = WAIT_SLICE_NANOS;
+                if (this.maxWaitNanos >= 0) {
+                    long remaining = this.maxWaitNanos - (System.nanoTime() - start);
+                    if (remaining <= 0) {
+                        throw new NoSuchElementException("Timed out waiting for an idle channel.");
+                    }
+                    slice = Math.min(slice, remaining);
+                }
+                entry = this.handoff.poll(slice, TimeUnit.NANOSECONDS);
+                if (entry != null && entry.claim() && validate(entry, this.testOnBorrow)) {
+                    return entry.channel;
+                }
+                if (this.closed) {
+                    throw new IllegalStateException("The channel pool is closed.");
+                }
+            }
+        } finally {
+            this.waiters.decrementAndGet();
+        }
+    }
+
+    // A channel the pool no longer knows, because the pool was closed or the channel removed while it was leased,
+    // is closed instead of being returned.
+    public void release(Channel channel) {
+        @Nullable Entry entry = this.entriesByChannel.get(channel);
+        if (entry == null) {
+            closeQuietly(channel);
+            return;
+        }
+        if (!validate(entry, this.testOnReturn)) {
+            return;
+        }
+        entry.free();
+
+        for (int i = 0; this.waiters.get() > 0; i++) {
+            if (entry.state.get() != Entry.FREE || this.handoff.offer(entry)) {
+                return;
+            } else if ((i & 0xff) == 0xff) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+            } else {
+                Thread.yield();
+            }
+        }
+
+        Deque<Entry> recent = this.recentlyReturned.get();
+        if (recent.size() >= THREAD_LOCAL_CAPACITY) {
+            recent.pollFirst();
+        }
+        recent.addLast(entry);
+    }
+
+    public void invalidate(Channel channel) {
+        @Nullable Entry entry = this.entriesByChannel.get(channel);
+        if (entry == null) {
+            closeQuietly(channel);
+        } else {
+            remove(entry);
+        }
+    }
+
+    public int idle() {
+        int idle = 0;
+        for (Entry entry : this.entries) {
+            if (entry.state.get() == Entry.FREE) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    public int waiting() {
+        return this.waiters.get();
+    }
+
+    public Duration meanBorrowWait() {
+        long borrows = this.borrows.sum();
+        return Duration.ofNanos(borrows == 0 ? 0 : this.borrowWaitNanos.sum() / borrows);
+    }
+
+    public Duration maxBorrowWait() {
+        return Duration.ofNanos(this.maxBorrowWaitNanos.get());
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.entries.forEach(this::remove);
+    }
+
+    private boolean reserve() {
+        int current;
+        do {
+            current = this.total.get();
+            if (current >= this.maxTotal) {
+                return false;
+            }
+        } while (!this.total.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private Channel create() throws Exception {
+        Channel channel;
+        try {
+            channel = this.factory.call();
+        } catch (Exception e) {
+            this.total.decrementAndGet();
+            throw e;
+        }
+        Entry entry = new Entry(channel);
+        this.entriesByChannel.put(channel, entry);
+        this.entries.add(entry);
+        return channel;
+    }
+
+    private boolean validate(Entry entry, boolean test) {
+        if (test && !entry.channel.isOpen()) {
+            remove(entry);
+            return false;
+        }
+        return true;
+    }
+
+    private void remove(Entry entry) {
+        if (entry.state.getAndSet(Entry.REMOVED) == Entry.REMOVED) {
+            return;
+        }
+        this.entries.remove(entry);
+        this.entriesByChannel.remove(entry.channel);
+        this.total.decrementAndGet();
+        closeQuietly(entry.channel);
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel.isOpen()) {
+            try {
+                channel.close();
+            } catch (Exception ignored) {
+                // The channel is being discarded either way.
+            }
+        }
+    }
+
+    private static final class Entry {
+        private static final int FREE = 0;
+        private static final int IN_USE = 1;
+        private static final int REMOVED = -1;
+
+        private final Channel channel;
+        private final AtomicInteger state;
+
+        private Entry(Channel channel) {
+            this.channel = channel;
+            this.state = new AtomicInteger(IN_USE);
+        }
+
+        private boolean claim() {
+            return this.state.compareAndSet(FREE, IN_USE);
+        }
+
+        private void free() {
+            this.state.compareAndSet(IN_USE, FREE);
+        }
+    }
+}
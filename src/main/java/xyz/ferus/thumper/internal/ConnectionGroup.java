@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Recoverable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import xyz.ferus.thumper.internal.util.ExceptionCatcher;
+
+/**
+ * The connections of a Rabbit instance. Each connection has its own socket and I/O thread, so spreading channels
+ * across several of them lets frame processing use more than one core.
+ */
+public class ConnectionGroup implements AutoCloseable {
+
+    private final List<Connection> connections;
+    private final AtomicInteger next;
+    private final AtomicIntegerArray consumers;
+
+    public ConnectionGroup(List<Connection> connections) {
+        if (connections.isEmpty()) {
+            throw new IllegalArgumentException("A connection group needs at least one connection.");
+        }
+        this.connections = List.copyOf(connections);
+        this.next = new AtomicInteger();
+        this.consumers = new AtomicIntegerArray(connections.size());
+    }
+
+    public List<Connection> connections() {
+        return this.connections;
+    }
+
+    public Channel createChannel() throws IOException {
+        int index = Math.floorMod(this.next.getAndIncrement(), this.connections.size());
+        return this.connections.get(index).createChannel();
+    }
+
+    // Consumers are long-lived and their deliveries all arrive on one connection's I/O thread, so they go to the
+    // connection carrying the fewest of them rather than round-robin.
+    public Channel createConsumerChannel() throws IOException {
+        int index = 0;
+        for (int i = 1; i < this.consumers.length(); i++) {
+            if (this.consumers.get(i) < this.consumers.get(index)) {
+                index = i;
+            }
+        }
+
+        Channel channel = this.connections.get(index).createChannel();
+        int consumerIndex = index;
+        this.consumers.incrementAndGet(consumerIndex);
+        AtomicBoolean counted = new AtomicBoolean(true);
+        channel.addShutdownListener(cause -> {
+            // An autorecovering channel is shut down each time its connection is lost, and reopened when it recovers,
+            // so it only stops counting once it is closed for good.
+            boolean recovers =
+                    channel instanceof Recoverable && cause.isHardError() && !cause.isInitiatedByApplication();
+            if (!recovers && counted.compareAndSet(true, false)) {
+                this.consumers.decrementAndGet(consumerIndex);
+            }
+        });
+        return channel;
+    }
+
+    @Override
+    public void close() throws Exception {
+        ExceptionCatcher catcher = new ExceptionCatcher();
+        this.connections.forEach(connection -> catcher.execute(connection::close));
+        catcher.validate();
+    }
+}
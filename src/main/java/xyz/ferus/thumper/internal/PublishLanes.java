@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.Channel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.ChannelFunction;
+import xyz.ferus.thumper.exchange.PublishPriority;
+import xyz.ferus.thumper.internal.util.ExceptionCatcher;
+
+/**
+ * Sends each publish priority its own way to a channel.
+ * <p>
+ * High priority publishes use a few channels of their own, so they never wait for a channel held by other traffic.
+ * Bulk publishes may only hold a limited number of the shared channels at once, and queue here beyond that, so they
+ * cannot crowd normal publishes out of the pool or the executor.
+ */
+public class PublishLanes implements AutoCloseable {
+
+    private final AbstractRabbitImpl rabbit;
+    private final AtomicReferenceArray<@Nullable Channel> highChannels;
+    private final ReentrantLock[] highLocks;
+    private final AtomicInteger nextHigh;
+
+    private final int bulkConcurrency;
+    private final ReentrantLock bulkLock;
+    private final Queue<Runnable> bulkQueue;
+    private int bulkActive;
+
+    public PublishLanes(AbstractRabbitImpl rabbit, int highChannels, int bulkConcurrency) {
+        this.rabbit = rabbit;
+        this.highChannels = new AtomicReferenceArray<>(highChannels);
+        this.highLocks = new ReentrantLock[highChannels];
+        for (int i = 0; i < highChannels; i++) {
+            this.highLocks[i] = new ReentrantLock();
+        }
+        this.nextHigh = new AtomicInteger();
+        this.bulkConcurrency = bulkConcurrency;
+        this.bulkLock = new ReentrantLock();
+        this.bulkQueue = new ArrayDeque<>();
+    }
+
+    public <R> CompletableFuture<R> transform(PublishPriority priority, ChannelFunction<R> function) {
+        return switch (priority) {
+            case HIGH -> transformHigh(function);
+            case NORMAL -> this.rabbit.transform(function);
+            case BULK -> transformBulk(function);
+        };
+    }
+
+    private <R> CompletableFuture<R> transformHigh(ChannelFunction<R> function) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        this.rabbit.executor().execute(() -> {
+            // Any free channel will do, and only if all of them are busy is one waited for.
+            int count = this.highLocks.length;
+            int start = Math.floorMod(this.nextHigh.getAndIncrement(), count);
+            int index = start;
+            boolean locked = false;
+            for (int i = 0; i < count && !locked; i++) {
+                index = (start + i) % count;
+                locked = this.highLocks[index].tryLock();
+            }
+            if (!locked) {
+                index = start;
+                this.highLocks[index].lock();
+            }
+
+            try {
+                @Nullable Channel channel = this.highChannels.get(index);
+                if (channel == null || !channel.isOpen()) {
+                    channel = this.rabbit.createChannel();
+                    this.highChannels.set(index, channel);
+                }
+                future.complete(function.apply(channel));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            } finally {
+                this.highLocks[index].unlock();
+            }
+        });
+        return future;
+    }
+
+    private <R> CompletableFuture<R> transformBulk(ChannelFunction<R> function) {
+        if (this.bulkConcurrency == Integer.MAX_VALUE) {
+            return this.rabbit.transform(function);
+        }
+
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Runnable task = () -> this.rabbit.transform(function).whenComplete((result, error) -> {
+            releaseBulk();
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        });
+
+        boolean run;
+        this.bulkLock.lock();
+        try {
+            run = this.bulkActive < this.bulkConcurrency;
+            if (run) {
+                this.bulkActive++;
+            } else {
+                this.bulkQueue.add(task);
+            }
+        } finally {
+            this.bulkLock.unlock();
+        }
+        if (run) {
+            task.run();
+        }
+        return future;
+    }
+
+    // The slot passes straight to the next queued task, if there is one.
+    private void releaseBulk() {
+        @Nullable Runnable next;
+        this.bulkLock.lock();
+        try {
+            next = this.bulkQueue.poll();
+            if (next == null) {
+                this.bulkActive--;
+            }
+        } finally {
+            this.bulkLock.unlock();
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        ExceptionCatcher catcher = new ExceptionCatcher();
+        for (int i = 0; i < this.highChannels.length(); i++) {
+            @Nullable Channel channel = this.highChannels.getAndSet(i, null);
+            if (channel != null && channel.isOpen()) {
+                catcher.execute(channel::close);
+            }
+        }
+        catcher.validate();
+    }
+}
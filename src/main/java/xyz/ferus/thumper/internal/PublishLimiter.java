@@ -0,0 +1,201 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.BackpressureException;
+import xyz.ferus.thumper.BackpressurePolicy;
+import xyz.ferus.thumper.exchange.PublishPriority;
+
+/**
+ * Bounds the number of messages and bytes that have been handed to the executor but not yet settled, and holds all
+ * publishing back while the broker has blocked any of the connections.
+ * <p>
+ * Waiting publishes are queued in order and released as permits free up, so no thread is parked while waiting. Each
+ * priority has its own queue, and a publish is only let through once every publish of a higher priority has been.
+ */
+public class PublishLimiter {
+
+    private static final CompletableFuture<@Nullable Void> ACQUIRED = CompletableFuture.completedFuture(null);
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final BackpressurePolicy policy;
+
+    private final ReentrantLock lock;
+    private final List<Queue<Waiter>> waiters;
+    private int messages;
+    private long bytes;
+    // The number of connections whose ConnectionState is blocked, kept so admitting a waiter need not scan them.
+    private int blockedConnections;
+
+    public PublishLimiter(int maxMessages, long maxBytes, BackpressurePolicy policy) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.lock = new ReentrantLock();
+        this.waiters = new ArrayList<>();
+        for (int i = 0; i < PublishPriority.values().length; i++) {
+            this.waiters.add(new ArrayDeque<>());
+        }
+    }
+
+    public CompletableFuture<@Nullable Void> acquire(PublishPriority priority, int messages, long bytes) {
+        this.lock.lock();
+        try {
+            if (!waitingAtOrAbove(priority) && this.blockedConnections == 0 && fits(messages, bytes)) {
+                this.messages += messages;
+                this.bytes += bytes;
+                return ACQUIRED;
+            }
+            if (this.policy == BackpressurePolicy.FAIL) {
+                return CompletableFuture.failedFuture(new BackpressureException(
+                        this.blockedConnections > 0
+                                ? "The broker has blocked publishing."
+                                : "Too many publishes are in flight."));
+            }
+            Waiter waiter = new Waiter(messages, bytes, new CompletableFuture<>());
+            this.waiters.get(priority.ordinal()).add(waiter);
+            return waiter.future();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void release(int messages, long bytes) {
+        this.lock.lock();
+        List<Waiter> ready;
+        try {
+            this.messages -= messages;
+            this.bytes -= bytes;
+            ready = admit();
+        } finally {
+            this.lock.unlock();
+        }
+        ready.forEach(waiter -> waiter.future().complete(null));
+    }
+
+    public void attach(Connection connection) {
+        ConnectionState state = new ConnectionState();
+        connection.addBlockedListener(state);
+        // A connection that is closed or recovered while blocked never sends connection.unblocked.
+        connection.addShutdownListener(cause -> setBlocked(state, false));
+        if (connection instanceof Recoverable recoverable) {
+            recoverable.addRecoveryListener(state);
+        }
+    }
+
+    private void setBlocked(ConnectionState state, boolean blocked) {
+        this.lock.lock();
+        List<Waiter> ready = List.of();
+        try {
+            // Repeated notifications from the same connection do not change anything.
+            if (state.blocked != blocked) {
+                state.blocked = blocked;
+                this.blockedConnections += blocked ? 1 : -1;
+                if (!blocked) {
+                    ready = admit();
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        ready.forEach(waiter -> waiter.future().complete(null));
+    }
+
+    // Must hold the lock. The futures are completed by the caller once the lock is released, since completing them
+    // starts the publishes.
+    private List<Waiter> admit() {
+        List<Waiter> ready = new ArrayList<>();
+        for (Queue<Waiter> lane : this.waiters) {
+            @Nullable Waiter next;
+            while (this.blockedConnections == 0
+                    && (next = lane.peek()) != null
+                    && fits(next.messages(), next.bytes())) {
+                lane.remove();
+                this.messages += next.messages();
+                this.bytes += next.bytes();
+                ready.add(next);
+            }
+            // A lower priority publish must not take the permits a higher priority one is waiting for.
+            if (!lane.isEmpty()) {
+                break;
+            }
+        }
+        return ready;
+    }
+
+    private boolean waitingAtOrAbove(PublishPriority priority) {
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            if (!this.waiters.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A publish larger than the limits is still let through on its own, rather than waiting forever.
+    private boolean fits(int messages, long bytes) {
+        return (this.messages == 0 && this.bytes == 0)
+                || (this.messages + messages <= this.maxMessages && this.bytes + bytes <= this.maxBytes);
+    }
+
+    private record Waiter(int messages, long bytes, CompletableFuture<@Nullable Void> future) {}
+
+    private class ConnectionState implements BlockedListener, RecoveryListener {
+
+        // Guarded by the limiter's lock.
+        private boolean blocked;
+
+        @Override
+        public void handleBlocked(String reason) {
+            setBlocked(this, true);
+        }
+
+        @Override
+        public void handleUnblocked() {
+            setBlocked(this, false);
+        }
+
+        @Override
+        public void handleRecovery(Recoverable recoverable) {
+            // The recovered connection starts out unblocked, and is blocked again if the broker still needs it to be.
+            setBlocked(this, false);
+        }
+
+        @Override
+        public void handleRecoveryStarted(Recoverable recoverable) {}
+    }
+}
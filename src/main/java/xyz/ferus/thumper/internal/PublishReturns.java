@@ -0,0 +1,191 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.ReturnListener;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.RabbitException;
+import xyz.ferus.thumper.exchange.UnroutableMessageException;
+
+/**
+ * Correlates messages returned by the broker with the mandatory publishes that sent them.
+ * <p>
+ * Every mandatory publish is tagged with a header holding a process-unique id. A returned message fails the publish
+ * with that id. Otherwise the publish completes when the broker confirms it, which it always does after any return,
+ * or once the return window has passed if confirms are disabled.
+ */
+public class PublishReturns implements ReturnListener, AutoCloseable {
+
+    static final String PUBLISH_ID_HEADER = "x-thumper-publish-id";
+
+    private final long windowNanos;
+    private final Supplier<ScheduledExecutorService> scheduler;
+    private final AtomicLong ids;
+    private final Map<Long, CompletableFuture<@Nullable Void>> pending;
+    // Every publish waits out the same window, so expiries are queued in deadline order.
+    private final Queue<Expiry> expiries;
+    private final AtomicBoolean sweeping;
+
+    private volatile boolean closed;
+
+    public PublishReturns(long windowNanos, Supplier<ScheduledExecutorService> scheduler) {
+        this.windowNanos = windowNanos;
+        this.scheduler = scheduler;
+        this.ids = new AtomicLong();
+        this.pending = new ConcurrentHashMap<>();
+        this.expiries = new ConcurrentLinkedQueue<>();
+        this.sweeping = new AtomicBoolean();
+    }
+
+    public long register(CompletableFuture<@Nullable Void> future) {
+        long id = this.ids.incrementAndGet();
+        this.pending.put(id, future);
+        return id;
+    }
+
+    public void discard(long id) {
+        this.pending.remove(id);
+    }
+
+    public static AMQP.BasicProperties tag(AMQP.@Nullable BasicProperties properties, long id) {
+        AMQP.BasicProperties base = properties == null ? new AMQP.BasicProperties() : properties;
+        @Nullable Map<String, Object> headers = base.getHeaders();
+        Map<String, Object> tagged = headers == null ? new HashMap<>(2) : new HashMap<>(headers);
+        tagged.put(PUBLISH_ID_HEADER, id);
+        return base.builder().headers(tagged).build();
+    }
+
+    // Called once the broker has confirmed or rejected the publish.
+    public void settle(long id, @Nullable Throwable failure) {
+        @Nullable CompletableFuture<@Nullable Void> future = this.pending.remove(id);
+        if (future == null) {
+            return;
+        }
+        if (failure == null) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    // Called when confirms are disabled, so the publish completes once no return has arrived within the window.
+    public void settleAfterWindow(long id) {
+        this.expiries.add(new Expiry(id, System.nanoTime() + this.windowNanos));
+        if (this.closed) {
+            // Raced with close, which may have already failed everything it found.
+            failExpiries();
+        } else if (this.sweeping.compareAndSet(false, true)) {
+            schedule(this.windowNanos);
+        }
+    }
+
+    public int pending() {
+        return this.pending.size();
+    }
+
+    @Override
+    public void handleReturn(
+            int replyCode,
+            String replyText,
+            String exchange,
+            String routingKey,
+            AMQP.BasicProperties properties,
+            byte[] body) {
+        @Nullable Map<String, Object> headers = properties.getHeaders();
+        if (headers == null || !(headers.get(PUBLISH_ID_HEADER) instanceof Number id)) {
+            return;
+        }
+        @Nullable CompletableFuture<@Nullable Void> future = this.pending.remove(id.longValue());
+        if (future != null) {
+            future.completeExceptionally(new UnroutableMessageException(replyCode, replyText, exchange, routingKey));
+        }
+    }
+
+    private void schedule(long delayNanos) {
+        try {
+            this.scheduler.get().schedule(this::sweep, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The Rabbit instance is closing, so no sweep will ever settle the queued publishes.
+            this.sweeping.set(false);
+            failExpiries();
+        }
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        @Nullable Expiry expiry;
+        while ((expiry = this.expiries.peek()) != null && expiry.deadline - now <= 0) {
+            this.expiries.poll();
+            settle(expiry.id, null);
+        }
+
+        if (expiry != null) {
+            schedule(expiry.deadline - now);
+            return;
+        }
+        this.sweeping.set(false);
+        // An expiry added after the queue was found empty may not have seen the flag yet.
+        if (!this.expiries.isEmpty() && this.sweeping.compareAndSet(false, true)) {
+            schedule(0);
+        }
+    }
+
+    // Called once the connections are closed, so no return or confirm can arrive for anything still pending.
+    @Override
+    public void close() {
+        this.closed = true;
+        this.expiries.clear();
+        for (Long id : this.pending.keySet()) {
+            settle(id, closedFailure());
+        }
+    }
+
+    // Publishes waiting on a confirm are left alone, since the confirm still settles them.
+    private void failExpiries() {
+        @Nullable Expiry expiry;
+        while ((expiry = this.expiries.poll()) != null) {
+            settle(expiry.id, closedFailure());
+        }
+    }
+
+    private static RabbitException closedFailure() {
+        return new RabbitException("The Rabbit instance was closed before the publish was settled.");
+    }
+
+    private record Expiry(long id, long deadline) {}
+}
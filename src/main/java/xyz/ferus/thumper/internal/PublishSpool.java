@@ -0,0 +1,461 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.RabbitException;
+
+/**
+ * A local, append-only journal that publishes are written to while the broker is unreachable or has blocked
+ * publishing, and that is drained back to the broker, in order, once it is available again.
+ * <p>
+ * Records are written to memory-mapped segments, so spooling costs little more than a copy. The mapped pages belong
+ * to the operating system, so spooled publishes survive the JVM exiting or crashing, though not the host losing power
+ * before they are flushed. A segment is deleted once every record in it has been published, and any segments left
+ * behind are drained when the spool is next opened.
+ */
+public class PublishSpool implements AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(PublishSpool.class.getName());
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final long DRAIN_RETRY_MILLIS = 1000;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantLock lock;
+    private final Deque<SpoolSegment> segments;
+    private final List<ConnectionState> connections;
+    private final AtomicBoolean draining;
+    private long nextSequence;
+
+    // Set while publishes must go to the spool: the broker is unavailable, or earlier publishes are still spooled.
+    private volatile boolean active;
+    // Set once close begins: nothing more is appended, and no further batches are drained.
+    private volatile boolean closing;
+    private volatile boolean closed;
+    // The batch being drained, which close waits for so its progress is recorded before the segments close.
+    @Nullable private volatile CompletableFuture<@Nullable Void> inFlight;
+
+    @MonotonicNonNull private AbstractRabbitImpl rabbit;
+
+    private PublishSpool(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.lock = new ReentrantLock();
+        this.segments = new ArrayDeque<>();
+        this.connections = new ArrayList<>();
+        this.draining = new AtomicBoolean();
+    }
+
+    public static PublishSpool open(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        PublishSpool spool = new PublishSpool(directory, segmentSize);
+
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(path -> path.getFileName().toString().matches("segment-\\d{20}\\.spool"))
+                    .sorted()
+                    .toList();
+        }
+        try {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                long sequence = Long.parseLong(name.substring(8, 28));
+                spool.segments.add(SpoolSegment.open(path, sequence));
+                spool.nextSequence = sequence + 1;
+            }
+            spool.reclaim();
+        } catch (IOException e) {
+            spool.close();
+            throw e;
+        }
+
+        long spooled = 0;
+        for (SpoolSegment segment : spool.segments) {
+            int position = segment.drainedPosition();
+            SpoolSegment.@Nullable Entry entry;
+            while ((entry = segment.read(position)) != null) {
+                position = entry.next();
+                spooled++;
+            }
+        }
+        spool.active = spooled > 0;
+        if (spool.active) {
+            LOGGER.log(System.Logger.Level.INFO, "Recovered " + spooled + " spooled publishes from " + directory + ".");
+        }
+        return spool;
+    }
+
+    // Called once the Rabbit instance is fully constructed, since draining leases its channels.
+    public void attach(AbstractRabbitImpl rabbit) {
+        this.rabbit = rabbit;
+        for (Connection connection : rabbit.connections().connections()) {
+            ConnectionState state = new ConnectionState();
+            this.connections.add(state);
+            connection.addBlockedListener(state);
+            connection.addShutdownListener(cause -> {
+                if (!cause.isInitiatedByApplication()) {
+                    state.down = true;
+                    state.blocked = false;
+                    this.active = true;
+                }
+            });
+            if (connection instanceof Recoverable recoverable) {
+                recoverable.addRecoveryListener(state);
+            }
+        }
+        drain();
+    }
+
+    public boolean active() {
+        return this.active;
+    }
+
+    public CompletableFuture<@Nullable Void> append(List<SpoolRecord> records) {
+        List<byte[]> payloads = new ArrayList<>(records.size());
+        try {
+            for (SpoolRecord record : records) {
+                payloads.add(record.encode());
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RabbitException("Failed to spool a publish.", e));
+        }
+
+        this.lock.lock();
+        try {
+            if (this.closing) {
+                return CompletableFuture.failedFuture(new RabbitException("The publish spool has been closed."));
+            }
+            for (byte[] payload : payloads) {
+                @Nullable SpoolSegment tail = this.segments.peekLast();
+                if (tail == null || !tail.append(payload)) {
+                    int size = Math.max(
+                            this.segmentSize, SpoolSegment.HEADER_SIZE + SpoolSegment.RECORD_OVERHEAD + payload.length);
+                    tail = SpoolSegment.create(this.directory, this.nextSequence++, size);
+                    this.segments.add(tail);
+                    tail.append(payload);
+                }
+            }
+            this.active = true;
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RabbitException("Failed to spool a publish.", e));
+        } finally {
+            this.lock.unlock();
+        }
+
+        drain();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Spools a publish that failed because the broker became unreachable, or passes any other failure through.
+    public CompletableFuture<@Nullable Void> recover(SpoolRecord record, Throwable failure) {
+        Throwable cause =
+                failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (available() && !isConnectionFailure(cause)) {
+            return CompletableFuture.failedFuture(cause);
+        }
+        return append(List.of(record));
+    }
+
+    public void drain() {
+        if (this.closing || this.rabbit == null || !available() || !this.draining.compareAndSet(false, true)) {
+            return;
+        }
+        this.rabbit.executor().execute(this::drainNext);
+    }
+
+    private void drainNext() {
+        List<SpoolRecord> records = new ArrayList<>(DRAIN_BATCH_SIZE);
+        List<Integer> positions = new ArrayList<>(DRAIN_BATCH_SIZE);
+        CompletableFuture<@Nullable Void> batch = new CompletableFuture<>();
+        SpoolSegment segment;
+        this.lock.lock();
+        try {
+            reclaim();
+            @Nullable SpoolSegment head = this.segments.peekFirst();
+            if (this.closing || head == null || head.fullyDrained()) {
+                // Nothing is left, so publishes go straight to the broker again. New records can only be appended
+                // under the lock, so none can be missed between this check and clearing the flag.
+                if (!this.closing && available()) {
+                    this.active = false;
+                }
+                this.draining.set(false);
+                return;
+            }
+
+            segment = head;
+            int position = segment.drainedPosition();
+            SpoolSegment.@Nullable Entry entry;
+            while (records.size() < DRAIN_BATCH_SIZE && (entry = segment.read(position)) != null) {
+                SpoolRecord record;
+                try {
+                    record = SpoolRecord.decode(entry.payload());
+                } catch (IOException e) {
+                    if (!records.isEmpty()) {
+                        // Skipped at the start of the next batch, once the records before it are committed.
+                        break;
+                    }
+                    LOGGER.log(System.Logger.Level.ERROR, "Discarding a spooled publish that could not be read.", e);
+                    segment.drained(entry.next());
+                    position = entry.next();
+                    continue;
+                }
+                records.add(record);
+                position = entry.next();
+                positions.add(position);
+            }
+            // Published under the lock, so close either sees this batch or stops it from being read.
+            this.inFlight = batch;
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (records.isEmpty()) {
+            batch.complete(null);
+            this.rabbit.executor().execute(this::drainNext);
+            return;
+        }
+
+        this.rabbit
+                .transform(channel -> publish(channel, records))
+                .thenCompose(futures -> CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                        .handle((ignored, error) -> futures))
+                .whenComplete((futures, error) -> {
+                    try {
+                        settle(segment, records, positions, futures, error);
+                    } finally {
+                        batch.complete(null);
+                    }
+                });
+    }
+
+    private List<CompletableFuture<@Nullable Void>> publish(Channel channel, List<SpoolRecord> records) {
+        List<CompletableFuture<@Nullable Void>> futures = new ArrayList<>(records.size());
+        for (SpoolRecord record : records) {
+            try {
+                futures.add(this.rabbit.publish(
+                        channel,
+                        record.exchange(),
+                        record.routingKey(),
+                        record.mandatory(),
+                        record.properties(),
+                        record.body()));
+            } catch (Exception e) {
+                futures.add(CompletableFuture.failedFuture(e));
+                break;
+            }
+        }
+        return futures;
+    }
+
+    private void settle(
+            SpoolSegment segment,
+            List<SpoolRecord> records,
+            List<Integer> positions,
+            @Nullable List<CompletableFuture<@Nullable Void>> futures,
+            @Nullable Throwable error) {
+        // Records are committed up to the first one lost to the broker becoming unavailable. Anything published
+        // after it is sent again, so a spooled publish is delivered at least once.
+        int settled = 0;
+        @Nullable Throwable interruption = error;
+        if (futures != null) {
+            for (CompletableFuture<@Nullable Void> future : futures) {
+                @Nullable Throwable failure = future.handle((ignored, cause) -> cause).join();
+                if (failure != null && isConnectionFailure(failure)) {
+                    interruption = failure;
+                    break;
+                }
+                if (failure != null) {
+                    LOGGER.log(
+                            System.Logger.Level.WARNING,
+                            "Dropping a spooled publish to exchange '"
+                                    + records.get(settled).exchange() + "' that the broker did not accept: "
+                                    + failure.getMessage());
+                }
+                settled++;
+            }
+        }
+
+        this.lock.lock();
+        try {
+            if (settled > 0 && !this.closed) {
+                segment.drained(positions.get(settled - 1));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (interruption == null) {
+            // Settled on the connection's I/O thread when confirms are enabled, so the next batch is read elsewhere.
+            this.rabbit.executor().execute(this::drainNext);
+            return;
+        }
+        this.draining.set(false);
+        LOGGER.log(
+                System.Logger.Level.DEBUG,
+                "Draining the publish spool was interrupted, and resumes once the broker is available: "
+                        + interruption.getMessage());
+        if (!this.closing && available()) {
+            // The failure was not seen as an outage, so nothing else will resume draining.
+            try {
+                this.rabbit.scheduler().schedule(this::drain, DRAIN_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Closing. What is left stays spooled, and is drained when the spool is next opened.
+            }
+        }
+    }
+
+    // Must hold the lock. Deletes drained segments, keeping the tail for further appends. A segment that cannot be
+    // deleted is left fully drained, and deleted when the spool is next opened.
+    private void reclaim() {
+        @Nullable SpoolSegment head;
+        while (this.segments.size() > 1 && (head = this.segments.peekFirst()) != null && head.fullyDrained()) {
+            this.segments.removeFirst();
+            try {
+                head.delete();
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to delete spool segment " + head.sequence(), e);
+            }
+        }
+    }
+
+    private boolean available() {
+        for (ConnectionState state : this.connections) {
+            if (state.down || state.blocked) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isConnectionFailure(Throwable failure) {
+        for (@Nullable Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ShutdownSignalException signal && signal.isHardError()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Stops spooling and draining, waits a while for the batch being drained to settle, then flushes the segments to
+    // disk. Anything not yet drained is kept, and drained when the spool is next opened.
+    public void close() {
+        close(Duration.ofMillis(CLOSE_TIMEOUT_MILLIS));
+    }
+
+    // A batch still waiting for the broker after the timeout is abandoned. Its records are still journaled, so they
+    // are published again when the spool is next opened.
+    void close(Duration timeout) {
+        this.lock.lock();
+        try {
+            this.closing = true;
+        } finally {
+            this.lock.unlock();
+        }
+
+        @Nullable CompletableFuture<@Nullable Void> inFlight = this.inFlight;
+        if (inFlight != null) {
+            try {
+                inFlight.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                LOGGER.log(
+                        System.Logger.Level.WARNING,
+                        "Closed the publish spool without waiting any longer for a batch the broker has not settled. "
+                                + "It is published again when the spool is next opened.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Never completed exceptionally.
+            }
+        }
+
+        this.lock.lock();
+        try {
+            this.closed = true;
+            for (SpoolSegment segment : this.segments) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "Failed to close spool segment " + segment.sequence(), e);
+                }
+            }
+            this.segments.clear();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private class ConnectionState implements BlockedListener, RecoveryListener {
+
+        private volatile boolean down;
+        private volatile boolean blocked;
+
+        @Override
+        public void handleBlocked(String reason) {
+            this.blocked = true;
+            PublishSpool.this.active = true;
+        }
+
+        @Override
+        public void handleUnblocked() {
+            this.blocked = false;
+            drain();
+        }
+
+        @Override
+        public void handleRecovery(Recoverable recoverable) {
+            this.down = false;
+            drain();
+        }
+
+        @Override
+        public void handleRecoveryStarted(Recoverable recoverable) {}
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.RabbitException;
+
+/**
+ * Tracks the outstanding publishes of a single channel in confirm mode.
+ * <p>
+ * Publish sequence numbers are kept in a sorted map so that {@code multiple=true} acks and nacks can settle a whole
+ * range of publishes at once.
+ */
+public class PublisherConfirms implements ConfirmListener, ShutdownListener {
+
+    private final Channel channel;
+    private final NavigableMap<Long, CompletableFuture<@Nullable Void>> outstanding;
+    private final Lock publishLock;
+
+    public PublisherConfirms(Channel channel) {
+        this.channel = channel;
+        this.outstanding = new ConcurrentSkipListMap<>();
+        this.publishLock = new ReentrantLock();
+    }
+
+    public static PublisherConfirms enable(Channel channel) throws IOException {
+        PublisherConfirms confirms = new PublisherConfirms(channel);
+        channel.confirmSelect();
+        channel.addConfirmListener(confirms);
+        channel.addShutdownListener(confirms);
+        return confirms;
+    }
+
+    public CompletableFuture<@Nullable Void> publish(
+            String exchange,
+            String routingKey,
+            boolean mandatory,
+            AMQP.@Nullable BasicProperties properties,
+            byte[] body)
+            throws IOException {
+        CompletableFuture<@Nullable Void> future = new CompletableFuture<>();
+        // The sequence number is only meaningful if nothing else publishes between reading it and publishing.
+        // A lock rather than a monitor, so a virtual thread blocked on the socket write does not pin its carrier.
+        this.publishLock.lock();
+        try {
+            long sequence = this.channel.getNextPublishSeqNo();
+            this.outstanding.put(sequence, future);
+            try {
+                this.channel.basicPublish(exchange, routingKey, mandatory, properties, body);
+            } catch (IOException | RuntimeException e) {
+                this.outstanding.remove(sequence);
+                throw e;
+            }
+        } finally {
+            this.publishLock.unlock();
+        }
+        return future;
+    }
+
+    public int outstanding() {
+        return this.outstanding.size();
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        settle(deliveryTag, multiple, null);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        settle(deliveryTag, multiple, new RabbitException("The broker rejected the published message."));
+    }
+
+    @Override
+    public void shutdownCompleted(ShutdownSignalException cause) {
+        RabbitException exception = new RabbitException(
+                "The channel was closed before the published message was confirmed: " + cause.getMessage(), cause);
+        settleAll(this.outstanding, exception);
+    }
+
+    private void settle(long deliveryTag, boolean multiple, @Nullable Exception failure) {
+        if (multiple) {
+            settleAll(this.outstanding.headMap(deliveryTag, true), failure);
+        } else {
+            @Nullable CompletableFuture<@Nullable Void> future = this.outstanding.remove(deliveryTag);
+            if (future != null) {
+                complete(future, failure);
+            }
+        }
+    }
+
+    private static void settleAll(
+            NavigableMap<Long, CompletableFuture<@Nullable Void>> range, @Nullable Exception failure) {
+        Map.Entry<Long, CompletableFuture<@Nullable Void>> entry;
+        while ((entry = range.pollFirstEntry()) != null) {
+            complete(entry.getValue(), failure);
+        }
+    }
+
+    private static void complete(CompletableFuture<@Nullable Void> future, @Nullable Exception failure) {
+        if (failure == null) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(failure);
+        }
+    }
+}
@@ -25,41 +25,78 @@
 package xyz.ferus.thumper.internal;
 
 import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.concurrent.Executor;
-import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.ChannelMetrics;
 import xyz.ferus.thumper.RabbitException;
 import xyz.ferus.thumper.codec.CodecRegistry;
+import xyz.ferus.thumper.internal.util.ExceptionCatcher;
 
 public class RabbitImpl extends AbstractRabbitImpl {
 
-    @MonotonicNonNull private Channel channel = null;
+    private final AtomicReferenceArray<@Nullable Channel> stripes;
+    private final Object[] stripeLocks;
+    // Each thread is given the next stripe on first use, so busy threads are spread evenly rather than by chance.
+    private final AtomicInteger nextStripe;
+    private final ThreadLocal<Integer> stripe;
 
-    private final Object channelLock = new Object();
-
-    public RabbitImpl(Connection connection, Executor executor, CodecRegistry codecRegistry) {
-        super(connection, executor, codecRegistry);
+    public RabbitImpl(
+            ConnectionGroup connections,
+            Executor executor,
+            CodecRegistry codecRegistry,
+            RabbitOptions options,
+            @Nullable PublishSpool spool) {
+        super(connections, executor, codecRegistry, options, spool);
+        this.stripes = new AtomicReferenceArray<>(options.channelStripes());
+        this.stripeLocks = new Object[options.channelStripes()];
+        Arrays.setAll(this.stripeLocks, i -> new Object());
+        this.nextStripe = new AtomicInteger();
+        this.stripe = ThreadLocal.withInitial(
+                () -> Math.floorMod(this.nextStripe.getAndIncrement(), options.channelStripes()));
     }
 
     @Override
     protected Channel provideChannel() throws RabbitException {
-        if (this.channel == null || !this.channel.isOpen()) {
-            synchronized (this.channelLock) {
-                if (this.channel == null || !this.channel.isOpen()) {
-                    try {
-                        this.channel = this.connection().createChannel();
-                    } catch (IOException e) {
-                        throw new RabbitException("Encountered an error while creating a Rabbit channel.", e);
-                    }
+        int stripe = this.stripe.get();
+        @Nullable Channel channel = this.stripes.get(stripe);
+        if (channel != null && channel.isOpen()) {
+            return channel;
+        }
+        // Only the callers of this stripe wait while it is re-created.
+        synchronized (this.stripeLocks[stripe]) {
+            channel = this.stripes.get(stripe);
+            if (channel == null || !channel.isOpen()) {
+                try {
+                    channel = this.createChannel();
+                } catch (IOException e) {
+                    throw new RabbitException("Encountered an error while creating a Rabbit channel.", e);
                 }
+                this.stripes.set(stripe, channel);
             }
+            return channel;
         }
-        return this.channel;
+    }
+
+    @Override
+    public ChannelMetrics channelMetrics() {
+        // Stripes are shared rather than handed out exclusively, so there is never anything to wait for.
+        return channelMetrics(0, 0, Duration.ZERO, Duration.ZERO);
     }
 
     @Override
     protected void closeInternal() throws Exception {
-        this.channel.close();
+        ExceptionCatcher catcher = new ExceptionCatcher();
+        for (int i = 0; i < this.stripes.length(); i++) {
+            @Nullable Channel channel = this.stripes.getAndSet(i, null);
+            if (channel != null && channel.isOpen()) {
+                catcher.execute(channel::close);
+            }
+        }
+        catcher.validate();
     }
 }
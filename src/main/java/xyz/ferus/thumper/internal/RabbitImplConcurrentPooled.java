@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.Channel;
+import java.util.concurrent.Executor;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.ChannelMetrics;
+import xyz.ferus.thumper.RabbitException;
+import xyz.ferus.thumper.codec.CodecRegistry;
+
+public class RabbitImplConcurrentPooled extends AbstractRabbitImpl {
+
+    private static final System.Logger LOGGER = System.getLogger(RabbitImplConcurrentPooled.class.getName());
+
+    private final ConcurrentChannelBag channelPool;
+
+    public RabbitImplConcurrentPooled(
+            ConnectionGroup connections,
+            Executor executor,
+            CodecRegistry codecRegistry,
+            RabbitOptions options,
+            @Nullable PublishSpool spool,
+            GenericObjectPoolConfig<Channel> poolConfig) {
+        super(connections, executor, codecRegistry, options, spool);
+        this.channelPool = new ConcurrentChannelBag(this::createChannel, poolConfig);
+    }
+
+    @Override
+    protected Channel provideChannel() throws RabbitException {
+        try {
+            return this.channelPool.borrow();
+        } catch (Exception e) {
+            throw new RabbitException("Encountered an error while creating a Rabbit channel.", e);
+        }
+    }
+
+    @Override
+    protected void releaseChannel(Channel channel, @Nullable Exception failure) {
+        try {
+            if (!channel.isOpen() || isChannelFailure(failure)) {
+                this.channelPool.invalidate(channel);
+            } else {
+                this.channelPool.release(channel);
+            }
+        } catch (Exception e) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to release a channel back to the pool.", e);
+        }
+    }
+
+    @Override
+    public ChannelMetrics channelMetrics() {
+        return channelMetrics(
+                this.channelPool.idle(),
+                this.channelPool.waiting(),
+                this.channelPool.meanBorrowWait(),
+                this.channelPool.maxBorrowWait());
+    }
+
+    @Override
+    protected void closeInternal() {
+        this.channelPool.close();
+    }
+}
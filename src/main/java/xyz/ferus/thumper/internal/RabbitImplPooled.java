@@ -25,26 +25,32 @@
 package xyz.ferus.thumper.internal;
 
 import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
+import java.time.Duration;
 import java.util.concurrent.Executor;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.ChannelMetrics;
 import xyz.ferus.thumper.RabbitException;
 import xyz.ferus.thumper.codec.CodecRegistry;
 
 public class RabbitImplPooled extends AbstractRabbitImpl implements PooledObjectFactory<Channel> {
 
+    private static final System.Logger LOGGER = System.getLogger(RabbitImplPooled.class.getName());
+
     private final GenericObjectPool<Channel> channelPool;
 
     public RabbitImplPooled(
-            Connection connection,
+            ConnectionGroup connections,
             Executor executor,
             CodecRegistry codecRegistry,
+            RabbitOptions options,
+            @Nullable PublishSpool spool,
             GenericObjectPoolConfig<Channel> poolConfig) {
-        super(connection, executor, codecRegistry);
+        super(connections, executor, codecRegistry, options, spool);
         this.channelPool = new GenericObjectPool<>(this, poolConfig);
     }
 
@@ -57,6 +63,28 @@ public class RabbitImplPooled extends AbstractRabbitImpl implements PooledObject
         }
     }
 
+    @Override
+    protected void releaseChannel(Channel channel, @Nullable Exception failure) {
+        try {
+            if (!channel.isOpen() || isChannelFailure(failure)) {
+                this.channelPool.invalidateObject(channel);
+            } else {
+                this.channelPool.returnObject(channel);
+            }
+        } catch (Exception e) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to release a channel back to the pool.", e);
+        }
+    }
+
+    @Override
+    public ChannelMetrics channelMetrics() {
+        return channelMetrics(
+                this.channelPool.getNumIdle(),
+                this.channelPool.getNumWaiters(),
+                Duration.ofMillis(this.channelPool.getMeanBorrowWaitTimeMillis()),
+                Duration.ofMillis(this.channelPool.getMaxBorrowWaitTimeMillis()));
+    }
+
     @Override
     protected void closeInternal() {
         this.channelPool.close();
@@ -72,7 +100,7 @@ public class RabbitImplPooled extends AbstractRabbitImpl implements PooledObject
 
     @Override
     public PooledObject<Channel> makeObject() throws Exception {
-        Channel channel = this.connection().createChannel();
+        Channel channel = this.createChannel();
         return new DefaultPooledObject<>(channel);
     }
 
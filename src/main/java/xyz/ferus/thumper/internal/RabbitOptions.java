@@ -0,0 +1,63 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import java.time.Duration;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.BackpressurePolicy;
+import xyz.ferus.thumper.exchange.RateLimit;
+import xyz.ferus.thumper.queue.SubscriptionOptions;
+
+/**
+ * Options that are fixed for the lifetime of a Rabbit instance.
+ * @param publisherConfirms whether channels are put into confirm mode and publishes complete on broker ack
+ * @param channelStripes the number of channels an unpooled Rabbit instance stripes its callers across
+ * @param coalescingBatchSize the number of coalesced publishes that triggers a flush
+ * @param coalescingLinger how long a coalesced publish may wait for a flush, or {@code null} if coalescing is disabled
+ * @param leakDetectionThreshold how long a channel lease may be held before it is reported, or {@code null} if leak
+ *                               detection is disabled
+ * @param maxInFlightMessages the number of unsettled published messages at which publishing is held back
+ * @param maxInFlightBytes the number of unsettled published bytes at which publishing is held back
+ * @param backpressurePolicy what a publish does when it is held back
+ * @param returnWindow how long an unconfirmed mandatory publish waits for a possible return before it completes
+ * @param rateLimit the rate limit each exchange starts with, or {@code null} if exchanges are not rate limited
+ * @param highPriorityChannels the number of channels reserved for high priority publishes
+ * @param bulkConcurrency the number of channels bulk publishes may hold at once
+ * @param subscriptionOptions the options subscriptions use unless others are given
+ */
+public record RabbitOptions(
+        boolean publisherConfirms,
+        int channelStripes,
+        int coalescingBatchSize,
+        @Nullable Duration coalescingLinger,
+        @Nullable Duration leakDetectionThreshold,
+        int maxInFlightMessages,
+        long maxInFlightBytes,
+        BackpressurePolicy backpressurePolicy,
+        Duration returnWindow,
+        @Nullable RateLimit rateLimit,
+        int highPriorityChannels,
+        int bulkConcurrency,
+        SubscriptionOptions subscriptionOptions) {}
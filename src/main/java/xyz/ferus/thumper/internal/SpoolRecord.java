@@ -0,0 +1,323 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.LongString;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A publish written to the spool, and its binary form.
+ * <p>
+ * Properties are written field by field behind a presence mask. Header values may be any type the client can put in
+ * a field table; anything else is rejected when the record is encoded rather than when it is drained.
+ */
+public record SpoolRecord(
+        String exchange, String routingKey, boolean mandatory, AMQP.BasicProperties properties, byte[] body) {
+
+    private static final int CONTENT_TYPE = 1;
+    private static final int CONTENT_ENCODING = 1 << 1;
+    private static final int HEADERS = 1 << 2;
+    private static final int DELIVERY_MODE = 1 << 3;
+    private static final int PRIORITY = 1 << 4;
+    private static final int CORRELATION_ID = 1 << 5;
+    private static final int REPLY_TO = 1 << 6;
+    private static final int EXPIRATION = 1 << 7;
+    private static final int MESSAGE_ID = 1 << 8;
+    private static final int TIMESTAMP = 1 << 9;
+    private static final int TYPE = 1 << 10;
+    private static final int USER_ID = 1 << 11;
+    private static final int APP_ID = 1 << 12;
+    private static final int CLUSTER_ID = 1 << 13;
+
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.body.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, this.exchange);
+        writeString(out, this.routingKey);
+        out.writeBoolean(this.mandatory);
+        writeProperties(out, this.properties);
+        out.writeInt(this.body.length);
+        out.write(this.body);
+        return bytes.toByteArray();
+    }
+
+    public static SpoolRecord decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String exchange = readString(in);
+        String routingKey = readString(in);
+        boolean mandatory = in.readBoolean();
+        AMQP.BasicProperties properties = readProperties(in);
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new SpoolRecord(exchange, routingKey, mandatory, properties, body);
+    }
+
+    private static void writeProperties(DataOutputStream out, AMQP.BasicProperties properties) throws IOException {
+        int mask = 0;
+        mask |= properties.getContentType() != null ? CONTENT_TYPE : 0;
+        mask |= properties.getContentEncoding() != null ? CONTENT_ENCODING : 0;
+        mask |= properties.getHeaders() != null ? HEADERS : 0;
+        mask |= properties.getDeliveryMode() != null ? DELIVERY_MODE : 0;
+        mask |= properties.getPriority() != null ? PRIORITY : 0;
+        mask |= properties.getCorrelationId() != null ? CORRELATION_ID : 0;
+        mask |= properties.getReplyTo() != null ? REPLY_TO : 0;
+        mask |= properties.getExpiration() != null ? EXPIRATION : 0;
+        mask |= properties.getMessageId() != null ? MESSAGE_ID : 0;
+        mask |= properties.getTimestamp() != null ? TIMESTAMP : 0;
+        mask |= properties.getType() != null ? TYPE : 0;
+        mask |= properties.getUserId() != null ? USER_ID : 0;
+        mask |= properties.getAppId() != null ? APP_ID : 0;
+        mask |= properties.getClusterId() != null ? CLUSTER_ID : 0;
+        out.writeShort(mask);
+
+        if (properties.getContentType() != null) {
+            writeString(out, properties.getContentType());
+        }
+        if (properties.getContentEncoding() != null) {
+            writeString(out, properties.getContentEncoding());
+        }
+        if (properties.getHeaders() != null) {
+            writeTable(out, properties.getHeaders());
+        }
+        if (properties.getDeliveryMode() != null) {
+            out.writeInt(properties.getDeliveryMode());
+        }
+        if (properties.getPriority() != null) {
+            out.writeInt(properties.getPriority());
+        }
+        if (properties.getCorrelationId() != null) {
+            writeString(out, properties.getCorrelationId());
+        }
+        if (properties.getReplyTo() != null) {
+            writeString(out, properties.getReplyTo());
+        }
+        if (properties.getExpiration() != null) {
+            writeString(out, properties.getExpiration());
+        }
+        if (properties.getMessageId() != null) {
+            writeString(out, properties.getMessageId());
+        }
+        if (properties.getTimestamp() != null) {
+            out.writeLong(properties.getTimestamp().getTime());
+        }
+        if (properties.getType() != null) {
+            writeString(out, properties.getType());
+        }
+        if (properties.getUserId() != null) {
+            writeString(out, properties.getUserId());
+        }
+        if (properties.getAppId() != null) {
+            writeString(out, properties.getAppId());
+        }
+        if (properties.getClusterId() != null) {
+            writeString(out, properties.getClusterId());
+        }
+    }
+
+    private static AMQP.BasicProperties readProperties(DataInputStream in) throws IOException {
+        int mask = in.readUnsignedShort();
+        AMQP.BasicProperties.Builder builder = new AMQP.BasicProperties.Builder();
+        if ((mask & CONTENT_TYPE) != 0) {
+            builder.contentType(readString(in));
+        }
+        if ((mask & CONTENT_ENCODING) != 0) {
+            builder.contentEncoding(readString(in));
+        }
+        if ((mask & HEADERS) != 0) {
+            builder.headers(readTable(in));
+        }
+        if ((mask & DELIVERY_MODE) != 0) {
+            builder.deliveryMode(in.readInt());
+        }
+        if ((mask & PRIORITY) != 0) {
+            builder.priority(in.readInt());
+        }
+        if ((mask & CORRELATION_ID) != 0) {
+            builder.correlationId(readString(in));
+        }
+        if ((mask & REPLY_TO) != 0) {
+            builder.replyTo(readString(in));
+        }
+        if ((mask & EXPIRATION) != 0) {
+            builder.expiration(readString(in));
+        }
+        if ((mask & MESSAGE_ID) != 0) {
+            builder.messageId(readString(in));
+        }
+        if ((mask & TIMESTAMP) != 0) {
+            builder.timestamp(new Date(in.readLong()));
+        }
+        if ((mask & TYPE) != 0) {
+            builder.type(readString(in));
+        }
+        if ((mask & USER_ID) != 0) {
+            builder.userId(readString(in));
+        }
+        if ((mask & APP_ID) != 0) {
+            builder.appId(readString(in));
+        }
+        if ((mask & CLUSTER_ID) != 0) {
+            builder.clusterId(readString(in));
+        }
+        return builder.build();
+    }
+
+    private static void writeTable(DataOutputStream out, Map<String, Object> table) throws IOException {
+        out.writeInt(table.size());
+        for (Map.Entry<String, Object> entry : table.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readTable(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> table = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            table.put(readString(in), readValue(in));
+        }
+        return table;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(DataOutputStream out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte('V');
+        } else if (value instanceof String string) {
+            out.writeByte('S');
+            writeString(out, string);
+        } else if (value instanceof LongString string) {
+            out.writeByte('S');
+            writeBytes(out, string.getBytes());
+        } else if (value instanceof Integer number) {
+            out.writeByte('I');
+            out.writeInt(number);
+        } else if (value instanceof Long number) {
+            out.writeByte('l');
+            out.writeLong(number);
+        } else if (value instanceof Short number) {
+            out.writeByte('s');
+            out.writeShort(number);
+        } else if (value instanceof Byte number) {
+            out.writeByte('b');
+            out.writeByte(number);
+        } else if (value instanceof Double number) {
+            out.writeByte('d');
+            out.writeDouble(number);
+        } else if (value instanceof Float number) {
+            out.writeByte('f');
+            out.writeFloat(number);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte('t');
+            out.writeBoolean(bool);
+        } else if (value instanceof BigDecimal decimal) {
+            out.writeByte('D');
+            out.writeInt(decimal.scale());
+            writeBytes(out, decimal.unscaledValue().toByteArray());
+        } else if (value instanceof Date date) {
+            out.writeByte('T');
+            out.writeLong(date.getTime());
+        } else if (value instanceof byte[] bytes) {
+            out.writeByte('x');
+            writeBytes(out, bytes);
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte('F');
+            writeTable(out, (Map<String, Object>) map);
+        } else if (value instanceof List<?> list) {
+            out.writeByte('A');
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else {
+            throw new IOException(
+                    "Cannot spool a header value of type " + value.getClass().getName());
+        }
+    }
+
+    private static @Nullable Object readValue(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        return switch (type) {
+            case 'V' -> null;
+            case 'S' -> readString(in);
+            case 'I' -> in.readInt();
+            case 'l' -> in.readLong();
+            case 's' -> in.readShort();
+            case 'b' -> in.readByte();
+            case 'd' -> in.readDouble();
+            case 'f' -> in.readFloat();
+            case 't' -> in.readBoolean();
+            case 'D' -> {
+                int scale = in.readInt();
+                yield new BigDecimal(new BigInteger(readBytes(in)), scale);
+            }
+            case 'T' -> new Date(in.readLong());
+            case 'x' -> readBytes(in);
+            case 'F' -> readTable(in);
+            case 'A' -> {
+                int size = in.readInt();
+                List<@Nullable Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                yield list;
+            }
+            default -> throw new IOException("Unknown spooled header value type " + type);
+        };
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        writeBytes(out, string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
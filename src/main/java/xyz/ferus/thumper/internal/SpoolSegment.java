@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * One memory-mapped file of the publish spool.
+ * <p>
+ * The file starts with a header holding the position up to which its records have been drained, followed by records
+ * of the form {@code length, crc32, payload}. A record's length is written last, after a zero length terminating the
+ * record after it, so a record torn by a crash is never mistaken for a complete one.
+ */
+public class SpoolSegment implements AutoCloseable {
+
+    private static final int MAGIC = 0x54485350;
+    private static final int VERSION = 1;
+    private static final int DRAINED_OFFSET = 8;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_OVERHEAD = 8;
+
+    private final long sequence;
+    private final Path path;
+    private final FileChannel file;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private int drainedPosition;
+
+    private SpoolSegment(long sequence, Path path, FileChannel file, MappedByteBuffer buffer) {
+        this.sequence = sequence;
+        this.path = path;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    public static SpoolSegment create(Path directory, long sequence, int size) throws IOException {
+        Path path = directory.resolve(fileName(sequence));
+        FileChannel file = FileChannel.open(
+                path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SpoolSegment segment =
+                new SpoolSegment(sequence, path, file, file.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.buffer.putInt(DRAINED_OFFSET, HEADER_SIZE);
+        segment.writePosition = HEADER_SIZE;
+        segment.drainedPosition = HEADER_SIZE;
+        return segment;
+    }
+
+    public static SpoolSegment open(Path path, long sequence) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SpoolSegment segment;
+        try {
+            long size = file.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Spool segment " + path + " has an invalid size of " + size + " bytes.");
+            }
+            segment = new SpoolSegment(sequence, path, file, file.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                throw new IOException("Spool segment " + path + " is not a version " + VERSION + " spool segment.");
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        int position = HEADER_SIZE;
+        Entry entry;
+        while ((entry = segment.read(position)) != null) {
+            position = entry.next();
+        }
+        segment.writePosition = position;
+        segment.drainedPosition = Math.min(Math.max(segment.buffer.getInt(DRAINED_OFFSET), HEADER_SIZE), position);
+        return segment;
+    }
+
+    public static String fileName(long sequence) {
+        return String.format("segment-%020d.spool", sequence);
+    }
+
+    public long sequence() {
+        return this.sequence;
+    }
+
+    public int capacity() {
+        return this.buffer.capacity();
+    }
+
+    public boolean append(byte[] payload) {
+        int position = this.writePosition;
+        int next = position + RECORD_OVERHEAD + payload.length;
+        if (next > this.buffer.capacity()) {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        this.buffer.put(position + RECORD_OVERHEAD, payload);
+        this.buffer.putInt(position + 4, (int) crc.getValue());
+        if (next + 4 <= this.buffer.capacity()) {
+            this.buffer.putInt(next, 0);
+        }
+        this.buffer.putInt(position, payload.length);
+        this.writePosition = next;
+        return true;
+    }
+
+    public @Nullable Entry read(int position) {
+        if (position + RECORD_OVERHEAD > this.buffer.capacity()) {
+            return null;
+        }
+        int length = this.buffer.getInt(position);
+        int next = position + RECORD_OVERHEAD + length;
+        if (length <= 0 || next > this.buffer.capacity() || next < 0) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        this.buffer.get(position + RECORD_OVERHEAD, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != this.buffer.getInt(position + 4)) {
+            return null;
+        }
+        return new Entry(payload, next);
+    }
+
+    public int drainedPosition() {
+        return this.drainedPosition;
+    }
+
+    public void drained(int position) {
+        this.drainedPosition = position;
+        this.buffer.putInt(DRAINED_OFFSET, position);
+    }
+
+    public boolean fullyDrained() {
+        return this.drainedPosition >= this.writePosition;
+    }
+
+    public void force() {
+        this.buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        this.file.close();
+    }
+
+    public void delete() throws IOException {
+        this.file.close();
+        Files.deleteIfExists(this.path);
+    }
+
+    public record Entry(byte[] payload, int next) {}
+}
@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.codec.BufferCodec;
+import xyz.ferus.thumper.codec.Codec;
+import xyz.ferus.thumper.codec.EncodingException;
+
+/**
+ * Encodes and decodes through {@link BufferCodec} where a codec supports it, using a growable buffer reused by each
+ * thread so that an encode costs a single copy into the published body.
+ */
+public final class CodecBuffers {
+
+    private static final int INITIAL_CAPACITY = 8192;
+    // Buffers grown past this by an unusually large message are dropped, rather than held by the thread forever.
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private static final ThreadLocal<@Nullable Buffer> BUFFERS = new ThreadLocal<>();
+
+    private CodecBuffers() {}
+
+    public static <T> byte[] encode(Codec<T> codec, T object) throws EncodingException {
+        if (!(codec instanceof BufferCodec<T> bufferCodec)) {
+            return codec.encode(object);
+        }
+
+        Buffer buffer = acquire();
+        try {
+            bufferCodec.encode(object, buffer);
+            return buffer.toByteArray();
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public static <T> T decode(Codec<T> codec, byte[] bytes) throws EncodingException {
+        return codec instanceof BufferCodec<T> bufferCodec
+                ? bufferCodec.decode(ByteBuffer.wrap(bytes))
+                : codec.decode(bytes);
+    }
+
+    // Reads a stream to its end into a reused buffer, and decodes from it without copying it into an exact array.
+    public static <T> T decode(Codec<T> codec, InputStream in) throws Exception {
+        Buffer buffer = acquire();
+        try {
+            buffer.readFrom(in);
+            if (codec instanceof BufferCodec<T> bufferCodec) {
+                return bufferCodec.decode(buffer.asByteBuffer());
+            }
+            return codec.decode(buffer.toByteArray());
+        } finally {
+            release(buffer);
+        }
+    }
+
+    // A codec that encodes or decodes through this class from inside another's encode or decode gets a buffer of
+    // its own, since the thread's buffer is still in use.
+    private static Buffer acquire() {
+        @Nullable Buffer buffer = BUFFERS.get();
+        if (buffer == null) {
+            return new Buffer(INITIAL_CAPACITY);
+        }
+        BUFFERS.set(null);
+        return buffer;
+    }
+
+    private static void release(Buffer buffer) {
+        if (buffer.capacity() <= MAX_RETAINED_CAPACITY) {
+            buffer.reset();
+            BUFFERS.set(buffer);
+        }
+    }
+
+    /**
+     * A byte array output stream whose contents can be read without copying.
+     */
+    private static final class Buffer extends OutputStream {
+        private byte[] bytes;
+        private int size;
+
+        private Buffer(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(this.size + 1);
+            this.bytes[this.size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(this.size + len);
+            System.arraycopy(b, off, this.bytes, this.size, len);
+            this.size += len;
+        }
+
+        private void readFrom(InputStream in) throws IOException {
+            while (true) {
+                if (this.size == this.bytes.length) {
+                    ensureCapacity(this.size + 1);
+                }
+                int read = in.read(this.bytes, this.size, this.bytes.length - this.size);
+                if (read == -1) {
+                    return;
+                }
+                this.size += read;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity < 0) {
+                throw new OutOfMemoryError("Encoded message is too large to fit in a byte array");
+            }
+            if (capacity > this.bytes.length) {
+                int grown = Math.max(capacity, this.bytes.length << 1);
+                this.bytes = Arrays.copyOf(this.bytes, grown < 0 ? Integer.MAX_VALUE - 8 : grown);
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(this.bytes, this.size);
+        }
+
+        private ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(this.bytes, 0, this.size);
+        }
+
+        private int capacity() {
+            return this.bytes.length;
+        }
+
+        private void reset() {
+            this.size = 0;
+        }
+    }
+}
@@ -24,11 +24,17 @@
  */
 package xyz.ferus.thumper.internal.codec;
 
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.codec.BufferCodec;
 import xyz.ferus.thumper.codec.Codec;
 import xyz.ferus.thumper.codec.CodecFactory;
 import xyz.ferus.thumper.codec.CodecRegistry;
@@ -40,40 +46,131 @@ public class CodecRegistryImpl implements CodecRegistry {
 
     private final Map<Class<?>, Codec<?>> codecs;
     private final List<CodecFactory> factories;
+    // Memoizes each type's resolution, including misses. Registering anything swaps in a fresh cache, so a
+    // resolution made before the registration is never served after it.
+    private volatile ClassValue<Resolution> resolutions;
 
     public CodecRegistryImpl() {
         this.codecs = new ConcurrentHashMap<>();
         this.factories = new CopyOnWriteArrayList<>();
+        this.resolutions = newResolutions();
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> Codec<T> get(Class<T> type) throws EncodingException {
-        @Nullable Codec<T> codec = (Codec<T>) this.codecs.get(type);
-        if (codec != null) {
-            return codec;
+        @Nullable Codec<T> codec = (Codec<T>) this.resolutions.get(type).codec();
+        if (codec == null) {
+            throw new EncodingException("No codec found for type " + type.getName());
         }
-
-        for (CodecFactory factory : this.factories) {
-            codec = factory.create(type);
-            if (codec != null) {
-                return codec;
-            }
-        }
-        throw new EncodingException("No codec found for type " + type.getName());
+        return codec;
     }
 
     @Override
     public <T> void register(Codec<T> codec) {
         this.codecs.put(codec.type(), codec);
+        this.resolutions = newResolutions();
     }
 
     @Override
     public void register(CodecFactory factory) {
         this.factories.add(factory);
+        this.resolutions = newResolutions();
     }
 
     public static CodecRegistry defaultRegistry() {
         return DEFAULT_REGISTRY;
     }
+
+    private ClassValue<Resolution> newResolutions() {
+        return new ClassValue<>() {
+            @Override
+            protected Resolution computeValue(Class<?> type) {
+                return resolve(type);
+            }
+        };
+    }
+
+    // The type itself is tried first, then its superclasses from nearest to furthest, then its interfaces, and
+    // Object last. Each is offered to the registered codecs and then to the factories.
+    private <T> Resolution resolve(Class<T> type) {
+        for (Class<?> candidate : hierarchy(type)) {
+            @Nullable Codec<?> codec = this.codecs.get(candidate);
+            if (codec == null) {
+                for (CodecFactory factory : this.factories) {
+                    codec = factory.create(candidate);
+                    if (codec != null) {
+                        break;
+                    }
+                }
+            }
+            if (codec != null) {
+                return new Resolution(candidate == type ? codec : inherited(type, codec));
+            }
+        }
+        return new Resolution(null);
+    }
+
+    private static Set<Class<?>> hierarchy(Class<?> type) {
+        Set<Class<?>> hierarchy = new LinkedHashSet<>();
+        for (@Nullable Class<?> current = type; current != null && current != Object.class; ) {
+            hierarchy.add(current);
+            current = current.getSuperclass();
+        }
+
+        ArrayDeque<Class<?>> pending = new ArrayDeque<>(hierarchy);
+        while (!pending.isEmpty()) {
+            for (Class<?> implemented : pending.poll().getInterfaces()) {
+                if (hierarchy.add(implemented)) {
+                    pending.add(implemented);
+                }
+            }
+        }
+        hierarchy.add(Object.class);
+        return hierarchy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Codec<T> inherited(Class<T> type, Codec<?> codec) {
+        return codec instanceof BufferCodec<?> bufferCodec
+                ? new InheritedBufferCodec<>(type, (BufferCodec<? super T>) bufferCodec)
+                : new InheritedCodec<>(type, (Codec<? super T>) codec);
+    }
+
+    private record Resolution(@Nullable Codec<?> codec) {}
+
+    // A supertype's codec encodes any instance of the type, but may decode something that is not one.
+    private static <T> T checked(Class<T> type, Codec<?> codec, Object decoded) throws EncodingException {
+        if (!type.isInstance(decoded)) {
+            throw new EncodingException("Codec for " + codec.type().getName() + " decoded a "
+                    + decoded.getClass().getName() + ", which is not a " + type.getName());
+        }
+        return type.cast(decoded);
+    }
+
+    private record InheritedCodec<T>(Class<T> type, Codec<? super T> codec) implements Codec<T> {
+
+        @Override
+        public byte[] encode(T object) throws EncodingException {
+            return this.codec.encode(object);
+        }
+
+        @Override
+        public T decode(byte[] bytes) throws EncodingException {
+            return checked(this.type, this.codec, this.codec.decode(bytes));
+        }
+    }
+
+    private record InheritedBufferCodec<T>(Class<T> type, BufferCodec<? super T> codec) implements BufferCodec<T> {
+
+        @Override
+        public void encode(T object, OutputStream out) throws EncodingException {
+            this.codec.encode(object, out);
+        }
+
+        @Override
+        public T decode(ByteBuffer buffer) throws EncodingException {
+            return checked(this.type, this.codec, this.codec.decode(buffer));
+        }
+    }
 }
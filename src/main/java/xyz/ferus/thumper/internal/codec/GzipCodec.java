@@ -24,18 +24,20 @@
  */
 package xyz.ferus.thumper.internal.codec;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayDeque;
-import java.util.Arrays;
-import java.util.Queue;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import xyz.ferus.thumper.codec.BufferCodec;
 import xyz.ferus.thumper.codec.Codec;
 import xyz.ferus.thumper.codec.EncodingException;
 
-public class GzipCodec<T> implements Codec<T> {
+public class GzipCodec<T> implements BufferCodec<T> {
+
+    private static final int BUFFER_SIZE = 8192;
 
     private final Codec<T> delegate;
 
@@ -48,98 +50,91 @@ public class GzipCodec<T> implements Codec<T> {
         return this.delegate.type();
     }
 
+    // A delegate that supports it encodes straight into the compressor, so the uncompressed form is never held whole.
     @Override
-    public byte[] encode(T object) throws EncodingException {
-        byte[] encoded = this.delegate.encode(object);
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        try (GZIPOutputStream gzipOut = new GZIPOutputStream(byteOut)) {
-            gzipOut.write(encoded);
+    public void encode(T object, OutputStream out) throws EncodingException {
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(new UnclosableOutputStream(out), BUFFER_SIZE)) {
+            if (this.delegate instanceof BufferCodec<T> bufferDelegate) {
+                bufferDelegate.encode(object, gzipOut);
+            } else {
+                gzipOut.write(this.delegate.encode(object));
+            }
+        } catch (EncodingException e) {
+            throw e;
         } catch (Exception e) {
             throw new EncodingException("Encountered an error while compressing the encoded object.", e);
         }
-        return byteOut.toByteArray();
     }
 
     @Override
-    public T decode(byte[] bytes) throws EncodingException {
-        byte[] uncompressed;
-        try (GZIPInputStream gzipIn = new GZIPInputStream(new java.io.ByteArrayInputStream(bytes))) {
-            uncompressed = toByteArray(gzipIn);
+    public T decode(ByteBuffer buffer) throws EncodingException {
+        InputStream in = buffer.hasArray()
+                ? new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+                : new ByteBufferInputStream(buffer.duplicate());
+        try (GZIPInputStream gzipIn = new GZIPInputStream(in, BUFFER_SIZE)) {
+            return CodecBuffers.decode(this.delegate, gzipIn);
+        } catch (EncodingException e) {
+            throw e;
         } catch (Exception e) {
             throw new EncodingException("Encountered an error while decompressing the encoded object.", e);
         }
-        return this.delegate.decode(uncompressed);
     }
 
-    // ByteStreams.toByteArray(InputStream)
-    // https://github.com/google/guava/blob/master/guava/src/com/google/common/io/ByteStreams.java
-    // https://github.com/google/guava/blob/master/guava/src/com/google/common/math/IntMath.java
-    // https://github.com/google/guava/blob/master/guava/src/com/google/common/primitives/Ints.java
-    private static final int BUFFER_SIZE = 8192;
-    private static final int TO_BYTE_ARRAY_DEQUE_SIZE = 20;
-    private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
-
-    public static byte[] toByteArray(InputStream in) throws IOException {
-        return toByteArrayInternal(in, new ArrayDeque<>(TO_BYTE_ARRAY_DEQUE_SIZE));
-    }
+    // Closing the compressor releases its native memory, but the stream it wrote to belongs to the caller.
+    private static final class UnclosableOutputStream extends OutputStream {
+        private final OutputStream out;
 
-    private static byte[] toByteArrayInternal(InputStream in, Queue<byte[]> buffers) throws IOException {
-        int totalLen = 0;
-        int initialBufferSize = Math.min(BUFFER_SIZE, Math.max(128, Integer.highestOneBit(totalLen) * 2));
-        for (int bufSize = initialBufferSize;
-                totalLen < MAX_ARRAY_LEN;
-                bufSize = saturatedMultiply(bufSize, bufSize < 4096 ? 4 : 2)) {
-            byte[] buf = new byte[Math.min(bufSize, MAX_ARRAY_LEN - totalLen)];
-            buffers.add(buf);
-            int off = 0;
-            while (off < buf.length) {
-                int r = in.read(buf, off, buf.length - off);
-                if (r == -1) {
-                    return combineBuffers(buffers, totalLen);
-                }
-                off += r;
-                totalLen += r;
-            }
+        private UnclosableOutputStream(OutputStream out) {
+            this.out = out;
         }
 
-        if (in.read() == -1) {
-            return combineBuffers(buffers, MAX_ARRAY_LEN);
-        } else {
-            throw new OutOfMemoryError("input is too large to fit in a byte array");
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
         }
-    }
 
-    private static byte[] combineBuffers(Queue<byte[]> buffers, int totalLen) {
-        if (buffers.isEmpty()) {
-            return new byte[0];
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
         }
-        byte[] result = buffers.remove();
-        if (result.length == totalLen) {
-            return result;
-        }
-        int remaining = totalLen - result.length;
-        result = Arrays.copyOf(result, totalLen);
-        while (remaining > 0) {
-            byte[] buf = buffers.remove();
-            int bytesToCopy = Math.min(remaining, buf.length);
-            int resultOffset = totalLen - remaining;
-            System.arraycopy(buf, 0, result, resultOffset, bytesToCopy);
-            remaining -= bytesToCopy;
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
         }
-        return result;
-    }
 
-    public static int saturatedMultiply(int a, int b) {
-        return saturatedCast((long) a * b);
+        @Override
+        public void close() {}
     }
 
-    public static int saturatedCast(long value) {
-        if (value > Integer.MAX_VALUE) {
-            return Integer.MAX_VALUE;
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
         }
-        if (value < Integer.MIN_VALUE) {
-            return Integer.MIN_VALUE;
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
         }
-        return (int) value;
     }
 }
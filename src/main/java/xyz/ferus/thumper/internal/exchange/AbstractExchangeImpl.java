@@ -25,13 +25,35 @@
 package xyz.ferus.thumper.internal.exchange;
 
 import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.codec.Codec;
+import xyz.ferus.thumper.codec.EncodingException;
+import xyz.ferus.thumper.exchange.BatchPublishException;
+import xyz.ferus.thumper.exchange.CoalescingMetrics;
 import xyz.ferus.thumper.exchange.Exchange;
 import xyz.ferus.thumper.exchange.ExchangeSettings;
+import xyz.ferus.thumper.exchange.PublishOptions;
+import xyz.ferus.thumper.exchange.PublishPriority;
+import xyz.ferus.thumper.exchange.Publisher;
+import xyz.ferus.thumper.exchange.RateLimit;
+import xyz.ferus.thumper.exchange.RateLimitMetrics;
+import xyz.ferus.thumper.exchange.RoutedMessage;
 import xyz.ferus.thumper.internal.AbstractRabbitImpl;
+import xyz.ferus.thumper.internal.PublishLimiter;
+import xyz.ferus.thumper.internal.PublishSpool;
+import xyz.ferus.thumper.internal.RabbitOptions;
+import xyz.ferus.thumper.internal.SpoolRecord;
+import xyz.ferus.thumper.internal.codec.CodecBuffers;
 import xyz.ferus.thumper.internal.queue.AbstractQueueImpl;
 import xyz.ferus.thumper.internal.util.ExceptionCatcher;
 import xyz.ferus.thumper.queue.Queue;
@@ -42,10 +64,21 @@ public abstract class AbstractExchangeImpl implements Exchange {
     private final String name;
     private final List<Queue> queues;
 
+    @Nullable private final PublishAccumulator accumulator;
+
+    @Nullable private volatile TokenBucket rateLimiter;
+
     public AbstractExchangeImpl(AbstractRabbitImpl rabbit, String name) {
         this.rabbit = rabbit;
         this.name = name;
         this.queues = new CopyOnWriteArrayList<>();
+
+        RabbitOptions options = rabbit.options();
+        @Nullable Duration linger = options.coalescingLinger();
+        this.accumulator = linger == null ? null : new PublishAccumulator(this, options.coalescingBatchSize(), linger);
+
+        @Nullable RateLimit rateLimit = options.rateLimit();
+        this.rateLimiter = rateLimit == null ? null : new TokenBucket(rateLimit, rabbit.scheduler());
     }
 
     public AbstractRabbitImpl rabbit() {
@@ -57,6 +90,22 @@ public abstract class AbstractExchangeImpl implements Exchange {
         return this.name;
     }
 
+    @Override
+    public @Nullable CoalescingMetrics coalescingMetrics() {
+        return this.accumulator == null ? null : this.accumulator.metrics();
+    }
+
+    @Override
+    public void rateLimit(@Nullable RateLimit limit) {
+        this.rateLimiter = limit == null ? null : new TokenBucket(limit, this.rabbit.scheduler());
+    }
+
+    @Override
+    public @Nullable RateLimitMetrics rateLimitMetrics() {
+        @Nullable TokenBucket rateLimiter = this.rateLimiter;
+        return rateLimiter == null ? null : rateLimiter.metrics();
+    }
+
     @Override
     public CompletableFuture<Void> declare(ExchangeSettings settings) {
         return this.rabbit.execute(channel -> channel.exchangeDeclare(
@@ -68,6 +117,221 @@ public abstract class AbstractExchangeImpl implements Exchange {
         return this.rabbit.execute(channel -> channel.exchangeDelete(this.name, ifUnused));
     }
 
+    protected CompletableFuture<@Nullable Void> publishInternal(
+            String routingKey, Object data, PublishOptions options) {
+        EncodedMessage message;
+        try {
+            message = new EncodedMessage(routingKey, options, encode(data));
+        } catch (EncodingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return publishMessage(message);
+    }
+
+    public CompletableFuture<@Nullable Void> publishMessage(EncodedMessage message) {
+        @Nullable PublishSpool spool = this.rabbit.spool();
+        if (spool == null) {
+            return send(message);
+        }
+        if (spool.active()) {
+            return spool.append(List.of(spoolRecord(message)));
+        }
+        return send(message).exceptionallyCompose(error -> spool.recover(spoolRecord(message), error));
+    }
+
+    private CompletableFuture<@Nullable Void> send(EncodedMessage message) {
+        @Nullable TokenBucket rateLimiter = this.rateLimiter;
+        if (rateLimiter == null) {
+            return sendNow(message);
+        }
+        return rateLimiter
+                .acquire(message.options().priority(), 1, message.body().length)
+                .thenCompose(acquired -> sendNow(message));
+    }
+
+    private CompletableFuture<@Nullable Void> sendNow(EncodedMessage message) {
+        PublishPriority priority = message.options().priority();
+        // High priority publishes are not held back to be coalesced with others.
+        if (this.accumulator != null && priority != PublishPriority.HIGH) {
+            return this.accumulator.add(message);
+        }
+        if (this.rabbit.publishLimiter() == null) {
+            return this.rabbit
+                    .transform(
+                            priority,
+                            channel -> this.rabbit.publish(
+                                    channel,
+                                    this.name,
+                                    message.routingKey(),
+                                    message.options().mandatory(),
+                                    message.options().properties().basicProperties(),
+                                    message.body()))
+                    .thenCompose(Function.identity());
+        }
+        return publishEncoded(List.of(message)).thenCompose(futures -> futures.get(0));
+    }
+
+    protected <T> Publisher<T> publisherInternal(Class<T> type, String routingKey, PublishOptions options)
+            throws EncodingException {
+        return new PublisherImpl<>(this, this.rabbit.codecs().get(type), routingKey, options);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected CompletableFuture<@Nullable Void> publishAllInternal(List<RoutedMessage> messages) {
+        if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<EncodedMessage> encoded = new ArrayList<>(messages.size());
+        @Nullable Class<?> type = null;
+        @Nullable Codec codec = null;
+        int index = 0;
+        try {
+            for (; index < messages.size(); index++) {
+                RoutedMessage message = messages.get(index);
+                Object data = message.data();
+                if (data.getClass() != type) {
+                    type = data.getClass();
+                    codec = this.rabbit.codecs().get(type);
+                }
+                encoded.add(
+                        new EncodedMessage(message.routingKey(), message.options(), CodecBuffers.encode(codec, data)));
+            }
+        } catch (EncodingException e) {
+            // Nothing has been published yet, so only the message that could not be encoded is reported.
+            return CompletableFuture.failedFuture(new BatchPublishException(messages.size(), Map.of(index, e)));
+        }
+        @Nullable PublishSpool spool = this.rabbit.spool();
+        if (spool == null) {
+            return sendAll(encoded).thenCompose(AbstractExchangeImpl::aggregate);
+        }
+        if (spool.active()) {
+            return spool.append(encoded.stream().map(this::spoolRecord).toList());
+        }
+        return sendAll(encoded)
+                .thenApply(futures -> {
+                    List<CompletableFuture<@Nullable Void>> recovered = new ArrayList<>(futures.size());
+                    for (int i = 0; i < futures.size(); i++) {
+                        SpoolRecord record = spoolRecord(encoded.get(i));
+                        recovered.add(futures.get(i).exceptionallyCompose(error -> spool.recover(record, error)));
+                    }
+                    return recovered;
+                })
+                .thenCompose(AbstractExchangeImpl::aggregate);
+    }
+
+    private CompletableFuture<List<CompletableFuture<@Nullable Void>>> sendAll(List<EncodedMessage> messages) {
+        @Nullable TokenBucket rateLimiter = this.rateLimiter;
+        if (rateLimiter == null) {
+            return publishEncoded(messages);
+        }
+        long bytes = 0;
+        for (EncodedMessage message : messages) {
+            bytes += message.body().length;
+        }
+        return rateLimiter
+                .acquire(priority(messages), messages.size(), bytes)
+                .thenCompose(acquired -> publishEncoded(messages));
+    }
+
+    // A batch goes in the lane of its least urgent message, so bulk traffic cannot ride in a faster lane.
+    private static PublishPriority priority(List<EncodedMessage> messages) {
+        PublishPriority priority = PublishPriority.HIGH;
+        for (EncodedMessage message : messages) {
+            PublishPriority messagePriority = message.options().priority();
+            if (messagePriority.compareTo(priority) > 0) {
+                priority = messagePriority;
+            }
+        }
+        return priority;
+    }
+
+    public CompletableFuture<List<CompletableFuture<@Nullable Void>>> publishEncoded(List<EncodedMessage> messages) {
+        PublishPriority priority = priority(messages);
+        @Nullable PublishLimiter limiter = this.rabbit.publishLimiter();
+        if (limiter == null) {
+            return this.rabbit.transform(priority, channel -> publishOn(channel, messages));
+        }
+
+        int count = messages.size();
+        long bytes = 0;
+        for (EncodedMessage message : messages) {
+            bytes += message.body().length;
+        }
+        long size = bytes;
+        return limiter.acquire(priority, count, size).thenCompose(acquired -> {
+            CompletableFuture<List<CompletableFuture<@Nullable Void>>> published =
+                    this.rabbit.transform(priority, channel -> publishOn(channel, messages));
+            // The permits are held until every message has been confirmed, or written if confirms are disabled.
+            published.whenComplete((futures, error) -> {
+                if (error != null) {
+                    limiter.release(count, size);
+                } else {
+                    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                            .whenComplete((ignored, cause) -> limiter.release(count, size));
+                }
+            });
+            return published;
+        });
+    }
+
+    private List<CompletableFuture<@Nullable Void>> publishOn(Channel channel, List<EncodedMessage> messages) {
+        List<CompletableFuture<@Nullable Void>> futures = new ArrayList<>(messages.size());
+        for (EncodedMessage message : messages) {
+            try {
+                futures.add(this.rabbit.publish(
+                        channel,
+                        this.name,
+                        message.routingKey(),
+                        message.options().mandatory(),
+                        message.options().properties().basicProperties(),
+                        message.body()));
+            } catch (Exception e) {
+                // The channel is unusable, so every remaining message fails with the same cause.
+                CompletableFuture<@Nullable Void> failed = CompletableFuture.failedFuture(e);
+                while (futures.size() < messages.size()) {
+                    futures.add(failed);
+                }
+                break;
+            }
+        }
+        return futures;
+    }
+
+    private SpoolRecord spoolRecord(EncodedMessage message) {
+        PublishOptions options = message.options();
+        return new SpoolRecord(
+                this.name,
+                message.routingKey(),
+                options.mandatory(),
+                options.properties().basicProperties(),
+                message.body());
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected byte[] encode(Object data) throws EncodingException {
+        Codec codec = this.rabbit.codecs().get(data.getClass());
+        return CodecBuffers.encode(codec, data);
+    }
+
+    private static CompletableFuture<@Nullable Void> aggregate(List<CompletableFuture<@Nullable Void>> futures) {
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .handle((ignored, error) -> {
+                    if (error == null) {
+                        return null;
+                    }
+                    Map<Integer, Throwable> failures = new HashMap<>();
+                    for (int i = 0; i < futures.size(); i++) {
+                        CompletableFuture<@Nullable Void> future = futures.get(i);
+                        if (future.isCompletedExceptionally()) {
+                            failures.put(
+                                    i, future.handle((value, cause) -> cause).join());
+                        }
+                    }
+                    throw new CompletionException(new BatchPublishException(futures.size(), failures));
+                });
+    }
+
     protected <T extends Queue> T registerQueue(T queue) {
         this.queues.add(queue);
         return queue;
@@ -83,6 +347,15 @@ public abstract class AbstractExchangeImpl implements Exchange {
     public void close() throws Exception {
         ExceptionCatcher catcher = new ExceptionCatcher();
 
+        @Nullable TokenBucket rateLimiter = this.rateLimiter;
+        if (rateLimiter != null) {
+            catcher.execute(rateLimiter::close);
+        }
+        if (this.accumulator != null) {
+            // Waits for the flushed publishes, so they are not cut off by the channels closing after this.
+            catcher.execute(() -> this.accumulator.flush().join());
+        }
+
         List<Queue> queues = new ArrayList<>(this.queues);
         this.queues.clear();
         queues.forEach(queue -> catcher.execute(queue::close));
@@ -25,10 +25,16 @@
 package xyz.ferus.thumper.internal.exchange;
 
 import com.rabbitmq.client.BuiltinExchangeType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import xyz.ferus.thumper.codec.Codec;
+import xyz.ferus.thumper.codec.EncodingException;
 import xyz.ferus.thumper.exchange.FanoutExchange;
+import xyz.ferus.thumper.exchange.PublishOptions;
+import xyz.ferus.thumper.exchange.Publisher;
+import xyz.ferus.thumper.exchange.RoutedMessage;
 import xyz.ferus.thumper.internal.AbstractRabbitImpl;
 import xyz.ferus.thumper.internal.queue.FanoutQueueImpl;
 import xyz.ferus.thumper.queue.FanoutQueue;
@@ -45,12 +51,22 @@ public class FanoutExchangeImpl extends AbstractExchangeImpl implements FanoutEx
     }
 
     @Override
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    public CompletableFuture<@Nullable Void> publish(Object data) {
-        return this.rabbit().execute(channel -> {
-            Codec codec = this.rabbit().codecs().get(data.getClass());
-            channel.basicPublish(this.name(), "", null, codec.encode(data));
-        });
+    public CompletableFuture<@Nullable Void> publish(Object data, PublishOptions options) {
+        return this.publishInternal("", data, options);
+    }
+
+    @Override
+    public <T> Publisher<T> publisher(Class<T> type, PublishOptions options) throws EncodingException {
+        return this.publisherInternal(type, "", options);
+    }
+
+    @Override
+    public CompletableFuture<@Nullable Void> publishAll(Collection<?> data) {
+        List<RoutedMessage> messages = new ArrayList<>(data.size());
+        for (Object element : data) {
+            messages.add(new RoutedMessage("", element));
+        }
+        return this.publishAllInternal(messages);
     }
 
     @Override
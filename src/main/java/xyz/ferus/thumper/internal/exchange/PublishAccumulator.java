@@ -0,0 +1,207 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.exchange;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.exchange.CoalescingMetrics;
+
+/**
+ * Collects single publishes from many threads and flushes them as one batch on one channel, once either the batch
+ * size is reached or the linger time has passed since the first message of the batch was added.
+ */
+public class PublishAccumulator {
+
+    private final AbstractExchangeImpl exchange;
+    private final int batchSize;
+    private final long lingerNanos;
+
+    private final Queue<Pending> buffer;
+    private final AtomicInteger size;
+    private final AtomicBoolean lingering;
+    private final AtomicBoolean handingOff;
+
+    private final LongAdder batches;
+    private final LongAdder messages;
+    private final LongAdder flushLatencyNanos;
+    private final AtomicLong maxFlushLatencyNanos;
+
+    public PublishAccumulator(AbstractExchangeImpl exchange, int batchSize, Duration linger) {
+        this.exchange = exchange;
+        this.batchSize = batchSize;
+        this.lingerNanos = linger.toNanos();
+        this.buffer = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.lingering = new AtomicBoolean();
+        this.handingOff = new AtomicBoolean();
+        this.batches = new LongAdder();
+        this.messages = new LongAdder();
+        this.flushLatencyNanos = new LongAdder();
+        this.maxFlushLatencyNanos = new AtomicLong();
+    }
+
+    public CompletableFuture<@Nullable Void> add(EncodedMessage message) {
+        Pending pending = new Pending(message, System.nanoTime(), new CompletableFuture<>());
+        // Enqueue before arming the linger timer, so a timer that is just firing still sees this message.
+        this.buffer.add(pending);
+        if (this.size.incrementAndGet() >= this.batchSize) {
+            flushBatch();
+        } else {
+            linger();
+        }
+        return pending.future();
+    }
+
+    // Writes at most one batch on the calling thread, so a caller that fills a batch never ends up publishing
+    // everyone else's messages as well. Any further full batch is handed to the executor, and a partial one to the
+    // linger timer.
+    private void flushBatch() {
+        List<Pending> batch = drain();
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+
+        int remaining = this.size.get();
+        if (remaining >= this.batchSize) {
+            if (this.handingOff.compareAndSet(false, true)) {
+                try {
+                    this.exchange.rabbit().executor().execute(() -> {
+                        this.handingOff.set(false);
+                        flushBatch();
+                    });
+                } catch (RejectedExecutionException e) {
+                    // The Rabbit instance is closing, so nothing is left behind for an executor that will never run.
+                    this.handingOff.set(false);
+                    flush();
+                }
+            }
+        } else if (remaining > 0) {
+            linger();
+        }
+    }
+
+    private void linger() {
+        if (this.lingering.compareAndSet(false, true)) {
+            try {
+                this.exchange
+                        .rabbit()
+                        .scheduler()
+                        .schedule(
+                                () -> {
+                                    this.lingering.set(false);
+                                    flushBatch();
+                                },
+                                this.lingerNanos,
+                                TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // The Rabbit instance is closing, so nothing is held back waiting for a timer that will never run.
+                this.lingering.set(false);
+                flush();
+            }
+        }
+    }
+
+    // Flushes everything buffered, in as many batches as it takes, for when the exchange closes. The returned future
+    // completes once every flushed message has been published, or confirmed if confirms are enabled, whether or not
+    // it succeeded. Each caller's own future carries the outcome.
+    public CompletableFuture<@Nullable Void> flush() {
+        List<CompletableFuture<@Nullable Void>> writes = new ArrayList<>();
+        List<Pending> batch;
+        while (!(batch = drain()).isEmpty()) {
+            writes.add(write(batch));
+        }
+        return CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).handle((ignored, error) -> null);
+    }
+
+    private List<Pending> drain() {
+        List<Pending> batch = new ArrayList<>(Math.min(this.size.get(), this.batchSize));
+        @Nullable Pending pending;
+        while (batch.size() < this.batchSize && (pending = this.buffer.poll()) != null) {
+            batch.add(pending);
+        }
+        this.size.addAndGet(-batch.size());
+        return batch;
+    }
+
+    private CompletableFuture<@Nullable Void> write(List<Pending> batch) {
+        List<EncodedMessage> messages = new ArrayList<>(batch.size());
+        long oldest = Long.MAX_VALUE;
+        for (Pending pending : batch) {
+            messages.add(pending.message());
+            oldest = Math.min(oldest, pending.enqueuedNanos());
+        }
+
+        long enqueuedNanos = oldest;
+        this.exchange.publishEncoded(messages).whenComplete((futures, error) -> {
+            recordFlush(batch.size(), System.nanoTime() - enqueuedNanos);
+            for (int i = 0; i < batch.size(); i++) {
+                CompletableFuture<@Nullable Void> target = batch.get(i).future();
+                if (error != null) {
+                    target.completeExceptionally(error);
+                } else {
+                    futures.get(i).whenComplete((ignored, cause) -> {
+                        if (cause != null) {
+                            target.completeExceptionally(cause);
+                        } else {
+                            target.complete(null);
+                        }
+                    });
+                }
+            }
+        });
+        return CompletableFuture.allOf(batch.stream().map(Pending::future).toArray(CompletableFuture[]::new))
+                .handle((ignored, error) -> null);
+    }
+
+    private void recordFlush(int messages, long latencyNanos) {
+        this.batches.increment();
+        this.messages.add(messages);
+        this.flushLatencyNanos.add(latencyNanos);
+        this.maxFlushLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    public CoalescingMetrics metrics() {
+        long batches = this.batches.sum();
+        return new CoalescingMetrics(
+                batches,
+                this.messages.sum(),
+                this.size.get(),
+                Duration.ofNanos(batches == 0 ? 0 : this.flushLatencyNanos.sum() / batches),
+                Duration.ofNanos(this.maxFlushLatencyNanos.get()));
+    }
+
+    private record Pending(EncodedMessage message, long enqueuedNanos, CompletableFuture<@Nullable Void> future) {}
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.exchange;
+
+import java.util.concurrent.CompletableFuture;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.codec.Codec;
+import xyz.ferus.thumper.codec.EncodingException;
+import xyz.ferus.thumper.exchange.MessageProperties;
+import xyz.ferus.thumper.exchange.PublishOptions;
+import xyz.ferus.thumper.exchange.Publisher;
+import xyz.ferus.thumper.exchange.PublishingSubscriber;
+import xyz.ferus.thumper.internal.codec.CodecBuffers;
+
+public class PublisherImpl<T> implements Publisher<T> {
+
+    private final AbstractExchangeImpl exchange;
+    private final Codec<T> codec;
+    private final String routingKey;
+    private final PublishOptions options;
+
+    public PublisherImpl(AbstractExchangeImpl exchange, Codec<T> codec, String routingKey, PublishOptions options) {
+        this.exchange = exchange;
+        this.codec = codec;
+        this.routingKey = routingKey;
+        this.options = options;
+    }
+
+    @Override
+    public MessageProperties properties() {
+        return this.options.properties();
+    }
+
+    @Override
+    public CompletableFuture<@Nullable Void> publish(T message) {
+        return publish(message, this.options);
+    }
+
+    @Override
+    public CompletableFuture<@Nullable Void> publish(T message, MessageProperties properties) {
+        return publish(message, this.options.withProperties(properties));
+    }
+
+    @Override
+    public PublishingSubscriber<T> subscriber(int maxInFlight) {
+        return new PublishingSubscriberImpl<>(this, maxInFlight);
+    }
+
+    private CompletableFuture<@Nullable Void> publish(T message, PublishOptions options) {
+        byte[] body;
+        try {
+            body = CodecBuffers.encode(this.codec, message);
+        } catch (EncodingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return this.exchange.publishMessage(new EncodedMessage(this.routingKey, options, body));
+    }
+}
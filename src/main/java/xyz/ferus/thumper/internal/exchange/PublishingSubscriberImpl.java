@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.exchange;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.exchange.Publisher;
+import xyz.ferus.thumper.exchange.PublishingSubscriber;
+
+public class PublishingSubscriberImpl<T> implements PublishingSubscriber<T> {
+
+    private final Publisher<T> publisher;
+    private final int maxInFlight;
+    private final AtomicReference<Flow.@Nullable Subscription> upstream;
+    private final AtomicInteger inFlight;
+    private final CompletableFuture<@Nullable Void> completion;
+    private volatile boolean upstreamDone;
+
+    public PublishingSubscriberImpl(Publisher<T> publisher, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max in flight must be at least 1, got " + maxInFlight);
+        }
+        this.publisher = publisher;
+        this.maxInFlight = maxInFlight;
+        this.upstream = new AtomicReference<>();
+        this.inFlight = new AtomicInteger();
+        this.completion = new CompletableFuture<>();
+    }
+
+    @Override
+    public CompletableFuture<@Nullable Void> completion() {
+        return this.completion;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription, "subscription");
+        if (!this.upstream.compareAndSet(null, subscription) || this.completion.isDone()) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(this.maxInFlight);
+    }
+
+    @Override
+    public void onNext(T item) {
+        Objects.requireNonNull(item, "item");
+        if (this.completion.isDone()) {
+            // Once a publish has failed and upstream was cancelled, anything still arriving is dropped unpublished.
+            return;
+        }
+        this.inFlight.incrementAndGet();
+        CompletableFuture<@Nullable Void> published;
+        try {
+            published = this.publisher.publish(item);
+        } catch (RuntimeException e) {
+            // Failed like a publish that completed exceptionally, so it is still counted out of flight.
+            published = CompletableFuture.failedFuture(e);
+        }
+        published.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                fail(failure);
+            } else if (!this.completion.isDone()) {
+                // Each completed publish frees room for one more.
+                Objects.requireNonNull(this.upstream.get()).request(1);
+            }
+            if (this.inFlight.decrementAndGet() == 0 && this.upstreamDone) {
+                this.completion.complete(null);
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        this.upstreamDone = true;
+        this.completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        this.upstreamDone = true;
+        if (this.inFlight.get() == 0) {
+            this.completion.complete(null);
+        }
+    }
+
+    private void fail(Throwable failure) {
+        if (this.completion.completeExceptionally(failure)) {
+            Flow.@Nullable Subscription subscription = this.upstream.get();
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+}
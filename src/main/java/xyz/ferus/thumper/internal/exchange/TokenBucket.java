@@ -0,0 +1,279 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.exchange;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.RabbitException;
+import xyz.ferus.thumper.exchange.PublishPriority;
+import xyz.ferus.thumper.exchange.RateLimit;
+import xyz.ferus.thumper.exchange.RateLimitMetrics;
+
+/**
+ * Holds publishes back to a {@link RateLimit}, with one bucket of tokens for messages and one for bytes.
+ * <p>
+ * Publishes that do not fit are queued in order and released by a single timer set for when the head of the queue
+ * will fit, so no thread waits. Each priority has its own queue, and a publish is only let through once every publish
+ * of a higher priority has been. A publish larger than a burst is let through once its bucket is full, and the bucket
+ * goes into debt for the rest.
+ */
+public class TokenBucket implements AutoCloseable {
+
+    private static final CompletableFuture<@Nullable Void> ACQUIRED = CompletableFuture.completedFuture(null);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimit limit;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock lock;
+    private final List<Queue<Waiter>> waiters;
+    private double messageTokens;
+    private double byteTokens;
+    private long refilledAt;
+    private long timer;
+    private long timerDue = Long.MAX_VALUE;
+    private long throttled;
+    private long totalDelayNanos;
+    private boolean closed;
+
+    public TokenBucket(RateLimit limit, ScheduledExecutorService scheduler) {
+        this.limit = limit;
+        this.scheduler = scheduler;
+        this.lock = new ReentrantLock();
+        this.waiters = new ArrayList<>();
+        for (int i = 0; i < PublishPriority.values().length; i++) {
+            this.waiters.add(new ArrayDeque<>());
+        }
+        this.messageTokens = limit.messageBurst();
+        this.byteTokens = limit.byteBurst();
+        this.refilledAt = System.nanoTime();
+    }
+
+    public RateLimit limit() {
+        return this.limit;
+    }
+
+    public CompletableFuture<@Nullable Void> acquire(PublishPriority priority, int messages, long bytes) {
+        Waiter waiter;
+        List<Waiter> rejected;
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                return CompletableFuture.failedFuture(closedFailure());
+            }
+            long now = System.nanoTime();
+            refill(now);
+            if (!waitingAtOrAbove(priority) && fits(messages, bytes)) {
+                take(messages, bytes);
+                return ACQUIRED;
+            }
+
+            this.throttled++;
+            waiter = new Waiter(messages, bytes, now, new CompletableFuture<>());
+            this.waiters.get(priority.ordinal()).add(waiter);
+            // A higher priority publish may now be at the head, and due sooner than the timer already set.
+            if (schedule()) {
+                return waiter.future();
+            }
+            rejected = closeLocked();
+        } finally {
+            this.lock.unlock();
+        }
+        fail(rejected);
+        return waiter.future();
+    }
+
+    // Fails every publish still held back, since no timer will release them once the scheduler has shut down.
+    @Override
+    public void close() {
+        List<Waiter> waiting;
+        this.lock.lock();
+        try {
+            waiting = closeLocked();
+        } finally {
+            this.lock.unlock();
+        }
+        fail(waiting);
+    }
+
+    public RateLimitMetrics metrics() {
+        this.lock.lock();
+        try {
+            refill(System.nanoTime());
+            return new RateLimitMetrics(
+                    this.limit,
+                    waiting(),
+                    this.throttled,
+                    Duration.ofNanos(this.totalDelayNanos),
+                    Math.max(0, this.messageTokens),
+                    Math.max(0, this.byteTokens));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void release(long timer) {
+        List<Waiter> ready = new ArrayList<>();
+        List<Waiter> rejected = List.of();
+        this.lock.lock();
+        try {
+            if (timer != this.timer) {
+                // Superseded by a timer set for a more urgent publish.
+                return;
+            }
+            long now = System.nanoTime();
+            refill(now);
+            for (Queue<Waiter> lane : this.waiters) {
+                @Nullable Waiter next;
+                while ((next = lane.peek()) != null && fits(next.messages(), next.bytes())) {
+                    lane.remove();
+                    take(next.messages(), next.bytes());
+                    this.totalDelayNanos += now - next.queuedAt();
+                    ready.add(next);
+                }
+                // A lower priority publish must not take the tokens a higher priority one is waiting for.
+                if (!lane.isEmpty()) {
+                    break;
+                }
+            }
+            this.timerDue = Long.MAX_VALUE;
+            if (waiting() > 0 && !schedule()) {
+                rejected = closeLocked();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        // Completed outside the lock, since completing them starts the publishes.
+        ready.forEach(waiter -> waiter.future().complete(null));
+        fail(rejected);
+    }
+
+    // Must hold the lock. Sets a timer for when the most urgent waiting publish fits, unless one is already due by
+    // then. Returns false if the timer could not be set because the scheduler has shut down.
+    private boolean schedule() {
+        @Nullable Waiter head = null;
+        for (Queue<Waiter> lane : this.waiters) {
+            if ((head = lane.peek()) != null) {
+                break;
+            }
+        }
+        if (head == null) {
+            return true;
+        }
+        double messageWait = deficit(head.messages(), this.messageTokens, this.limit.messageBurst())
+                / this.limit.messagesPerSecond();
+        double byteWait = deficit(head.bytes(), this.byteTokens, this.limit.byteBurst()) / this.limit.bytesPerSecond();
+        long delayNanos = Math.max((long) Math.ceil(Math.max(messageWait, byteWait) * NANOS_PER_SECOND), 1);
+        long due = System.nanoTime() + delayNanos;
+        if (this.timerDue != Long.MAX_VALUE && this.timerDue - due <= 0) {
+            return true;
+        }
+        long timer = ++this.timer;
+        try {
+            this.scheduler.schedule(() -> release(timer), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        this.timerDue = due;
+        return true;
+    }
+
+    // Must hold the lock. The waiters are failed by the caller once the lock is released.
+    private List<Waiter> closeLocked() {
+        this.closed = true;
+        List<Waiter> waiting = new ArrayList<>();
+        for (Queue<Waiter> lane : this.waiters) {
+            waiting.addAll(lane);
+            lane.clear();
+        }
+        return waiting;
+    }
+
+    private static void fail(List<Waiter> waiters) {
+        waiters.forEach(waiter -> waiter.future().completeExceptionally(closedFailure()));
+    }
+
+    private static RabbitException closedFailure() {
+        return new RabbitException("The exchange was closed before the publish was let through its rate limit.");
+    }
+
+    // Must hold the lock.
+    private int waiting() {
+        int waiting = 0;
+        for (Queue<Waiter> lane : this.waiters) {
+            waiting += lane.size();
+        }
+        return waiting;
+    }
+
+    // Must hold the lock.
+    private boolean waitingAtOrAbove(PublishPriority priority) {
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            if (!this.waiters.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Must hold the lock.
+    private void refill(long now) {
+        double elapsed = (now - this.refilledAt) / NANOS_PER_SECOND;
+        this.refilledAt = now;
+        this.messageTokens =
+                refilled(this.messageTokens, elapsed, this.limit.messagesPerSecond(), this.limit.messageBurst());
+        this.byteTokens = refilled(this.byteTokens, elapsed, this.limit.bytesPerSecond(), this.limit.byteBurst());
+    }
+
+    // An unlimited dimension is always full, which also avoids multiplying a zero elapsed time by infinity.
+    private static double refilled(double tokens, double elapsed, double rate, long burst) {
+        return Double.isInfinite(rate) ? burst : Math.min(burst, tokens + elapsed * rate);
+    }
+
+    private boolean fits(int messages, long bytes) {
+        return this.messageTokens >= Math.min(messages, this.limit.messageBurst())
+                && this.byteTokens >= Math.min(bytes, this.limit.byteBurst());
+    }
+
+    private void take(int messages, long bytes) {
+        this.messageTokens -= messages;
+        this.byteTokens -= bytes;
+    }
+
+    private static double deficit(long needed, double tokens, long burst) {
+        return Math.max(0, Math.min(needed, burst) - tokens);
+    }
+
+    private record Waiter(int messages, long bytes, long queuedAt, CompletableFuture<@Nullable Void> future) {}
+}
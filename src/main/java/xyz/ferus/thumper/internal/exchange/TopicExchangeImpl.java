@@ -25,9 +25,14 @@
 package xyz.ferus.thumper.internal.exchange;
 
 import com.rabbitmq.client.BuiltinExchangeType;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import xyz.ferus.thumper.codec.Codec;
+import xyz.ferus.thumper.codec.EncodingException;
+import xyz.ferus.thumper.exchange.PublishOptions;
+import xyz.ferus.thumper.exchange.Publisher;
+import xyz.ferus.thumper.exchange.RoutedMessage;
 import xyz.ferus.thumper.exchange.TopicExchange;
 import xyz.ferus.thumper.internal.AbstractRabbitImpl;
 import xyz.ferus.thumper.internal.queue.TopicQueueImpl;
@@ -45,12 +50,19 @@ public class TopicExchangeImpl extends AbstractExchangeImpl implements TopicExch
     }
 
     @Override
-    @SuppressWarnings({"rawtypes", "unchecked"})
-    public CompletableFuture<@Nullable Void> publish(String routingKey, Object data) {
-        return this.rabbit().execute(channel -> {
-            Codec codec = this.rabbit().codecs().get(data.getClass());
-            channel.basicPublish(this.name(), routingKey, null, codec.encode(data));
-        });
+    public CompletableFuture<@Nullable Void> publish(String routingKey, Object data, PublishOptions options) {
+        return this.publishInternal(routingKey, data, options);
+    }
+
+    @Override
+    public <T> Publisher<T> publisher(Class<T> type, String routingKey, PublishOptions options)
+            throws EncodingException {
+        return this.publisherInternal(type, routingKey, options);
+    }
+
+    @Override
+    public CompletableFuture<@Nullable Void> publishAll(Collection<RoutedMessage> messages) {
+        return this.publishAllInternal(List.copyOf(messages));
     }
 
     @Override
@@ -28,23 +28,47 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DeliverCallback;
 import com.rabbitmq.client.Delivery;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import xyz.ferus.thumper.codec.Codec;
 import xyz.ferus.thumper.codec.EncodingException;
 import xyz.ferus.thumper.internal.AbstractRabbitImpl;
+import xyz.ferus.thumper.internal.codec.CodecBuffers;
 import xyz.ferus.thumper.internal.exchange.AbstractExchangeImpl;
+import xyz.ferus.thumper.internal.queue.FailureHandler.Settlement;
 import xyz.ferus.thumper.internal.util.ExceptionCatcher;
+import xyz.ferus.thumper.queue.AckMode;
+import xyz.ferus.thumper.queue.AsyncQueueConsumer;
+import xyz.ferus.thumper.queue.BatchQueueConsumer;
+import xyz.ferus.thumper.queue.OrderingKey;
 import xyz.ferus.thumper.queue.Queue;
 import xyz.ferus.thumper.queue.QueueConsumer;
 import xyz.ferus.thumper.queue.Subscription;
+import xyz.ferus.thumper.queue.SubscriptionOptions;
 
 public abstract class AbstractQueueImpl implements Queue {
 
+    private static final System.Logger LOGGER = System.getLogger(AbstractQueueImpl.class.getName());
+    // Async and flow subscriptions need a prefetch count to bound the deliveries they keep in flight or buffered.
+    private static final int BOUNDED_PREFETCH = 256;
+
     private final AbstractRabbitImpl rabbit;
     private final AbstractExchangeImpl exchange;
     private final String name;
@@ -86,61 +110,554 @@ public abstract class AbstractQueueImpl implements Queue {
     }
 
     @SuppressWarnings("resource")
-    private <T> void cancelCallback(String consumerTag, Class<T> type, QueueConsumer<T> consumer) {
+    private void cancelCallback(String consumerTag, SubscriptionOptions options, CallbackFactory callbacks) {
         @Nullable SubscriptionImpl updating = (SubscriptionImpl) this.subscriptions.remove(consumerTag);
         if (updating == null) {
             return;
         }
+        updating.flushAcks();
 
         this.rabbit
-                .execute(channel -> {
-                    String newConsumerTag = registerConsumer(channel, type, consumer);
-                    updating.channelChanged(channel, newConsumerTag);
-                    this.subscriptions.put(newConsumerTag, updating);
+                .transformOnNewChannel(channel -> {
+                    Registration registration = registerConsumer(channel, options, callbacks);
+                    updating.channelChanged(channel, registration.consumerTag(), registration.acks());
+                    this.subscriptions.put(registration.consumerTag(), updating);
+                    return null;
                 })
                 .join();
     }
 
     @Override
     public <T> CompletableFuture<Subscription> subscribe(Class<T> type, QueueConsumer<T> consumer) {
-        return this.rabbit().transform(channel -> {
-            String consumerTag = registerConsumer(channel, type, consumer);
-            SubscriptionImpl subscription = new SubscriptionImpl(this.rabbit, this, channel, consumerTag);
-            this.subscriptions.put(consumerTag, subscription);
+        return subscribe(type, consumer, this.rabbit.options().subscriptionOptions());
+    }
+
+    @Override
+    public <T> CompletableFuture<Subscription> subscribe(
+            Class<T> type, QueueConsumer<T> consumer, SubscriptionOptions options) {
+        FailureHandler failures = new FailureHandler(this.rabbit, this.name, options.failurePolicy());
+        return subscribe(options, (channel, acks) -> {
+            Codec<T> codec = this.rabbit.codecs().get(type);
+            if (options.concurrency() == 1) {
+                return new DeliverCallbackImpl<>(codec, consumer, acks, failures);
+            }
+
+            DeliveryDispatcher dispatcher = new DeliveryDispatcher(
+                    Objects.requireNonNullElse(options.dispatchExecutor(), this.rabbit.executor()),
+                    options.concurrency(),
+                    options.ordering() != null);
+            return new DispatchingDeliverCallback<>(
+                    codec,
+                    consumer,
+                    dispatcher,
+                    options.ordering(),
+                    acks == null ? null : new AckTracker(acks),
+                    failures);
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<Subscription> subscribeBatch(Class<T> type, BatchQueueConsumer<T> consumer) {
+        return subscribeBatch(type, consumer, this.rabbit.options().subscriptionOptions());
+    }
+
+    @Override
+    public <T> CompletableFuture<Subscription> subscribeBatch(
+            Class<T> type, BatchQueueConsumer<T> consumer, SubscriptionOptions options) {
+        FailureHandler failures = new FailureHandler(this.rabbit, this.name, options.failurePolicy());
+        return subscribe(
+                options,
+                (channel, acks) -> new BatchDeliverCallback<>(
+                        channel,
+                        this.rabbit.codecs().get(type),
+                        consumer,
+                        acks,
+                        failures,
+                        options.batchSize(),
+                        options.batchWait(),
+                        this.rabbit.scheduler(),
+                        this.rabbit.executor()));
+    }
+
+    @Override
+    public <T> CompletableFuture<Subscription> subscribeAsync(Class<T> type, AsyncQueueConsumer<T> consumer) {
+        return subscribeAsync(type, consumer, this.rabbit.options().subscriptionOptions());
+    }
+
+    @Override
+    public <T> CompletableFuture<Subscription> subscribeAsync(
+            Class<T> type, AsyncQueueConsumer<T> consumer, SubscriptionOptions options) {
+        SubscriptionOptions bounded = options.prefetchCount() > 0
+                ? options
+                : options.toBuilder().prefetch(BOUNDED_PREFETCH).build();
+        FailureHandler failures = new FailureHandler(this.rabbit, this.name, options.failurePolicy());
+        return subscribe(
+                bounded,
+                (channel, acks) -> new AsyncDeliverCallback<>(
+                        this.rabbit.codecs().get(type),
+                        consumer,
+                        acks == null ? null : new AckTracker(acks),
+                        failures,
+                        bounded.prefetchCount(),
+                        this.rabbit.scheduler(),
+                        this.rabbit.executor()));
+    }
+
+    @Override
+    public <T> Flow.Publisher<T> flowPublisher(Class<T> type) {
+        return flowPublisher(type, this.rabbit.options().subscriptionOptions());
+    }
+
+    @Override
+    public <T> Flow.Publisher<T> flowPublisher(Class<T> type, SubscriptionOptions options) {
+        // Deliveries are only acknowledged once emitted, so the prefetch window bounds the publisher's buffer.
+        SubscriptionOptions bounded = options.toBuilder()
+                .ackMode(AckMode.MANUAL)
+                .prefetch(options.prefetchCount() > 0 ? options.prefetchCount() : BOUNDED_PREFETCH)
+                .build();
+        return new QueueFlowPublisher<>(
+                this, type, bounded, new FailureHandler(this.rabbit, this.name, options.failurePolicy()));
+    }
+
+    CompletableFuture<Subscription> subscribe(SubscriptionOptions options, CallbackFactory callbacks) {
+        return this.rabbit().transformOnNewChannel(channel -> {
+            Registration registration = registerConsumer(channel, options, callbacks);
+            SubscriptionImpl subscription =
+                    new SubscriptionImpl(this.rabbit, this, channel, registration.consumerTag(), registration.acks());
+            this.subscriptions.put(registration.consumerTag(), subscription);
             return subscription;
         });
     }
 
-    private <T> String registerConsumer(Channel channel, Class<T> type, QueueConsumer<T> consumer)
+    private Registration registerConsumer(Channel channel, SubscriptionOptions options, CallbackFactory callbacks)
             throws EncodingException, IOException {
-        Codec<T> codec = this.rabbit.codecs().get(type);
-        DeliverCallbackImpl<T> callback = new DeliverCallbackImpl<>(codec, consumer);
-        return channel.basicConsume(this.name(), callback, removing -> cancelCallback(removing, type, consumer));
+        boolean autoAck = options.ackMode() == AckMode.AUTO;
+        @Nullable AckCoalescer acks = autoAck
+                ? null
+                : new AckCoalescer(
+                        channel, options.effectiveAckBatchSize(), options.ackInterval(), this.rabbit.scheduler());
+        DeliverCallback callback = callbacks.create(channel, acks);
+        if (options.prefetchCount() > 0) {
+            channel.basicQos(options.prefetchCount(), options.globalPrefetch());
+        }
+        String consumerTag = channel.basicConsume(
+                this.name(), autoAck, callback, removing -> cancelCallback(removing, options, callbacks));
+        return new Registration(consumerTag, acks);
+    }
+
+    // Creates the callback for each channel a subscription consumes on, including those it moves to after the broker
+    // cancels it.
+    @FunctionalInterface
+    interface CallbackFactory {
+        DeliverCallback create(Channel channel, @Nullable AckCoalescer acks) throws EncodingException;
     }
 
+    private record Registration(String consumerTag, @Nullable AckCoalescer acks) {}
+
     public static class DeliverCallbackImpl<T> implements DeliverCallback {
         private final Codec<T> codec;
         private final QueueConsumer<T> consumer;
+        private final @Nullable AckCoalescer acks;
+        private final FailureHandler failures;
+
+        public DeliverCallbackImpl(
+                Codec<T> codec, QueueConsumer<T> consumer, @Nullable AckCoalescer acks, FailureHandler failures) {
+            this.codec = codec;
+            this.consumer = consumer;
+            this.acks = acks;
+            this.failures = failures;
+        }
+
+        @Override
+        public void handle(String consumerTag, Delivery message) throws IOException {
+            long deliveryTag = message.getEnvelope().getDeliveryTag();
+            @Nullable Exception failure;
+            try {
+                failure = consume(this.consumer, decode(this.codec, message), this.failures);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            if (failure == null) {
+                if (this.acks != null) {
+                    this.acks.ack(deliveryTag);
+                }
+                return;
+            }
+            // Later deliveries wait, so that this one is settled before any acknowledgement could cover it.
+            this.failures
+                    .settle(message, failure, settlement(this.acks, deliveryTag))
+                    .join();
+        }
+    }
+
+    /**
+     * Hands deliveries off the channel's dispatch thread to a {@link DeliveryDispatcher}, acknowledging them through
+     * an {@link AckTracker} as they complete.
+     */
+    public static class DispatchingDeliverCallback<T> implements DeliverCallback {
+        private final Codec<T> codec;
+        private final QueueConsumer<T> consumer;
+        private final DeliveryDispatcher dispatcher;
+        private final @Nullable OrderingKey ordering;
+        private final @Nullable AckTracker acks;
+        private final FailureHandler failures;
+
+        public DispatchingDeliverCallback(
+                Codec<T> codec,
+                QueueConsumer<T> consumer,
+                DeliveryDispatcher dispatcher,
+                @Nullable OrderingKey ordering,
+                @Nullable AckTracker acks,
+                FailureHandler failures) {
+            this.codec = codec;
+            this.consumer = consumer;
+            this.dispatcher = dispatcher;
+            this.ordering = ordering;
+            this.acks = acks;
+            this.failures = failures;
+        }
+
+        @Override
+        public void handle(String consumerTag, Delivery message) {
+            long deliveryTag = message.getEnvelope().getDeliveryTag();
+            @Nullable OrderingKey ordering = this.ordering;
+            @Nullable Object key = ordering == null
+                    ? null
+                    : ordering.key(
+                            message.getEnvelope().getRoutingKey(),
+                            message.getProperties().getHeaders());
+            AckTracker.@Nullable Pending pending = this.acks == null ? null : this.acks.begin(deliveryTag);
+            this.dispatcher.dispatch(key, deliveryTag, () -> run(message, pending));
+        }
+
+        private void run(Delivery message, AckTracker.@Nullable Pending pending) {
+            @Nullable Exception failure;
+            try {
+                failure = consume(this.consumer, decode(this.codec, message), this.failures);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            // Deliveries with the same key wait until this one is settled.
+            Settlement settlement = settlement(this.acks, pending);
+            if (failure != null) {
+                this.failures.settle(message, failure, settlement).join();
+                return;
+            }
+            try {
+                settlement.ack();
+            } catch (Exception e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to acknowledge a delivery.", e);
+            }
+        }
+    }
+
+    /**
+     * Collects decoded deliveries into batches, handing each to a {@link BatchQueueConsumer} once it is full or has
+     * waited long enough. Full batches are handled on the channel's dispatch thread, and late ones on the executor.
+     */
+    public static class BatchDeliverCallback<T> implements DeliverCallback {
+        private final Channel channel;
+        private final Codec<T> codec;
+        private final BatchQueueConsumer<T> consumer;
+        private final @Nullable AckCoalescer acks;
+        private final FailureHandler failures;
+        private final int batchSize;
+        private final long batchWaitNanos;
+        private final ScheduledExecutorService scheduler;
+        private final Executor executor;
+        // Held while a batch is handled, so that batches are handled one at a time and in delivery order.
+        private final ReentrantLock lock;
+
+        private List<T> batch;
+        private List<Delivery> deliveries;
+        private @Nullable ScheduledFuture<?> timer;
+
+        public BatchDeliverCallback(
+                Channel channel,
+                Codec<T> codec,
+                BatchQueueConsumer<T> consumer,
+                @Nullable AckCoalescer acks,
+                FailureHandler failures,
+                int batchSize,
+                Duration batchWait,
+                ScheduledExecutorService scheduler,
+                Executor executor) {
+            this.channel = channel;
+            this.codec = codec;
+            this.consumer = consumer;
+            this.acks = acks;
+            this.failures = failures;
+            this.batchSize = batchSize;
+            this.batchWaitNanos = batchWait.toNanos();
+            this.scheduler = scheduler;
+            this.executor = executor;
+            this.lock = new ReentrantLock();
+            this.batch = new ArrayList<>(batchSize);
+            this.deliveries = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public void handle(String consumerTag, Delivery message) throws IOException {
+            T decoded;
+            try {
+                decoded = decode(this.codec, message);
+            } catch (RuntimeException e) {
+                // The batch collected so far was delivered before this message, so it is settled first.
+                this.lock.lock();
+                try {
+                    handleBatch();
+                } finally {
+                    this.lock.unlock();
+                }
+                this.failures
+                        .settle(
+                                message,
+                                e,
+                                settlement(this.acks, message.getEnvelope().getDeliveryTag()))
+                        .join();
+                return;
+            }
+
+            this.lock.lock();
+            try {
+                this.batch.add(decoded);
+                this.deliveries.add(message);
+                if (this.batch.size() >= this.batchSize || this.batchWaitNanos == 0) {
+                    handleBatch();
+                } else if (this.timer == null) {
+                    this.timer = this.scheduler.schedule(
+                            () -> this.executor.execute(this::handleLateBatch),
+                            this.batchWaitNanos,
+                            TimeUnit.NANOSECONDS);
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void handleLateBatch() {
+            this.lock.lock();
+            try {
+                if (this.channel.isOpen()) {
+                    handleBatch();
+                }
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to settle a batch of deliveries.", e);
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void handleBatch() throws IOException {
+            @Nullable ScheduledFuture<?> timer = this.timer;
+            if (timer != null) {
+                timer.cancel(false);
+                this.timer = null;
+            }
+            if (this.batch.isEmpty()) {
+                return;
+            }
+
+            List<T> batch = this.batch;
+            List<Delivery> deliveries = this.deliveries;
+            this.batch = new ArrayList<>(this.batchSize);
+            this.deliveries = new ArrayList<>(this.batchSize);
+            long lastDeliveryTag =
+                    deliveries.get(deliveries.size() - 1).getEnvelope().getDeliveryTag();
+            Settlement settlement = new Settlement() {
+                @Override
+                public void ack() throws IOException {
+                    if (BatchDeliverCallback.this.acks != null) {
+                        BatchDeliverCallback.this.acks.ack(lastDeliveryTag, deliveries.size());
+                        BatchDeliverCallback.this.acks.flush();
+                    }
+                }
+
+                @Override
+                public void reject(boolean requeue) throws IOException {
+                    if (BatchDeliverCallback.this.acks != null) {
+                        BatchDeliverCallback.this.acks.nack(lastDeliveryTag, true, requeue);
+                    }
+                }
+            };
+
+            @Nullable Exception failure = consume(this.consumer::accept, Collections.unmodifiableList(batch), this.failures);
+            if (failure == null) {
+                settlement.ack();
+            } else {
+                this.failures.settle(deliveries, failure, settlement).join();
+            }
+        }
+    }
+
+    /**
+     * Hands each delivery to an {@link AsyncQueueConsumer} without waiting for earlier deliveries, settling it once its
+     * stage completes. The channel's dispatch thread only waits once the in-flight limit is reached, which the
+     * prefetch count prevents unless the broker acknowledges deliveries itself.
+     */
+    public static class AsyncDeliverCallback<T> implements DeliverCallback {
+        private final Codec<T> codec;
+        private final AsyncQueueConsumer<T> consumer;
+        private final @Nullable AckTracker acks;
+        private final FailureHandler failures;
+        private final Semaphore inFlight;
+        private final ScheduledExecutorService scheduler;
+        private final Executor executor;
 
-        public DeliverCallbackImpl(Codec<T> codec, QueueConsumer<T> consumer) {
+        public AsyncDeliverCallback(
+                Codec<T> codec,
+                AsyncQueueConsumer<T> consumer,
+                @Nullable AckTracker acks,
+                FailureHandler failures,
+                int maxInFlight,
+                ScheduledExecutorService scheduler,
+                Executor executor) {
             this.codec = codec;
             this.consumer = consumer;
+            this.acks = acks;
+            this.failures = failures;
+            this.inFlight = new Semaphore(maxInFlight);
+            this.scheduler = scheduler;
+            this.executor = executor;
         }
 
         @Override
         public void handle(String consumerTag, Delivery message) {
+            AckTracker.@Nullable Pending pending = this.acks == null
+                    ? null
+                    : this.acks.begin(message.getEnvelope().getDeliveryTag());
+            Settlement settlement = settlement(this.acks, pending);
+
             T decoded;
             try {
-                byte[] encoded = message.getBody();
-                decoded = this.codec.decode(encoded);
+                decoded = decode(this.codec, message);
+            } catch (RuntimeException e) {
+                this.failures.settle(message, e, settlement);
+                return;
+            }
+
+            // The permit is held through any retries, until the delivery is settled.
+            this.inFlight.acquireUninterruptibly();
+            attempt(decoded, message, settlement, 0);
+        }
+
+        private void attempt(T decoded, Delivery message, Settlement settlement, int retries) {
+            CompletionStage<?> stage;
+            try {
+                stage = this.consumer.accept(decoded);
             } catch (Exception e) {
-                throw new RuntimeException("Failed to decode message", e);
+                stage = CompletableFuture.failedFuture(e);
+            }
+
+            stage.whenComplete((ignored, failure) -> {
+                if (failure == null) {
+                    try {
+                        settlement.ack();
+                    } catch (Exception e) {
+                        LOGGER.log(System.Logger.Level.WARNING, "Failed to acknowledge a delivery.", e);
+                    } finally {
+                        this.inFlight.release();
+                    }
+                    return;
+                }
+
+                @Nullable Duration backoff = this.failures.retryBackoff(retries);
+                if (backoff == null) {
+                    settle(message, failure, settlement);
+                    return;
+                }
+                // Once the subscription is shutting down, a retry that can no longer run is settled like one that
+                // ran out of attempts, so its permit is released.
+                try {
+                    this.scheduler.schedule(
+                            () -> {
+                                try {
+                                    this.executor.execute(() -> attempt(decoded, message, settlement, retries + 1));
+                                } catch (RejectedExecutionException e) {
+                                    settle(message, failure, settlement);
+                                }
+                            },
+                            backoff.toNanos(),
+                            TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    settle(message, failure, settlement);
+                }
+            });
+        }
+
+        private void settle(Delivery message, Throwable failure, Settlement settlement) {
+            Throwable cause =
+                    failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            this.failures.settle(message, cause, settlement).whenComplete((settled, error) -> this.inFlight.release());
+        }
+    }
+
+    static Settlement settlement(@Nullable AckCoalescer acks, long deliveryTag) {
+        return new Settlement() {
+            @Override
+            public void ack() throws IOException {
+                if (acks != null) {
+                    acks.ack(deliveryTag);
+                }
             }
 
+            @Override
+            public void reject(boolean requeue) throws IOException {
+                if (acks != null) {
+                    acks.nack(deliveryTag, false, requeue);
+                }
+            }
+        };
+    }
+
+    private static Settlement settlement(@Nullable AckTracker acks, AckTracker.@Nullable Pending pending) {
+        return new Settlement() {
+            @Override
+            public void ack() throws IOException {
+                if (acks != null && pending != null) {
+                    acks.complete(pending);
+                }
+            }
+
+            @Override
+            public void reject(boolean requeue) throws IOException {
+                if (acks != null && pending != null) {
+                    acks.reject(pending, requeue);
+                }
+            }
+        };
+    }
+
+    static <T> T decode(Codec<T> codec, Delivery message) {
+        try {
+            byte[] encoded = message.getBody();
+            return CodecBuffers.decode(codec, encoded);
+        } catch (Exception e) {
+            throw new UndecodableMessageException(e);
+        }
+    }
+
+    // Consumes a message, retrying in place for as long as the failure policy allows. Returns the last failure if
+    // every attempt failed.
+    private static <T> @Nullable Exception consume(QueueConsumer<T> consumer, T message, FailureHandler failures) {
+        for (int retries = 0; ; retries++) {
             try {
-                this.consumer.accept(decoded);
+                consumer.accept(message);
+                return null;
             } catch (Exception e) {
-                throw new RuntimeException("Failed to consume message", e);
+                @Nullable Duration backoff = failures.retryBackoff(retries);
+                if (backoff == null) {
+                    return e;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoff.toNanos());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(interrupted);
+                    return e;
+                }
             }
         }
     }
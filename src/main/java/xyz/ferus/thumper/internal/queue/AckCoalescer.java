@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import com.rabbitmq.client.Channel;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Coalesces the acknowledgements of handled deliveries on one channel into a single multiple-ack, sent once enough
+ * deliveries are waiting or the oldest of them has waited long enough.
+ * <p>
+ * Deliveries must be acknowledged in the order they were delivered, since a multiple-ack covers every earlier
+ * delivery. Deliveries handled out of order are put back in order by an {@link AckTracker}.
+ */
+public class AckCoalescer {
+
+    private static final System.Logger LOGGER = System.getLogger(AckCoalescer.class.getName());
+
+    private final Channel channel;
+    private final int batchSize;
+    private final long intervalNanos;
+    private final ScheduledExecutorService scheduler;
+    private final ReentrantLock lock;
+
+    private long pendingTag;
+    private int pending;
+    private @Nullable ScheduledFuture<?> timer;
+
+    public AckCoalescer(Channel channel, int batchSize, Duration interval, ScheduledExecutorService scheduler) {
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.intervalNanos = interval.toNanos();
+        this.scheduler = scheduler;
+        this.lock = new ReentrantLock();
+    }
+
+    public boolean open() {
+        return this.channel.isOpen();
+    }
+
+    public void ack(long deliveryTag) throws IOException {
+        ack(deliveryTag, 1);
+    }
+
+    // Acknowledges a delivery along with the given number of deliveries up to and including it.
+    public void ack(long deliveryTag, int count) throws IOException {
+        this.lock.lock();
+        try {
+            this.pendingTag = deliveryTag;
+            this.pending += count;
+            if (this.pending >= this.batchSize || this.intervalNanos == 0) {
+                flushLocked();
+            } else if (this.timer == null) {
+                this.timer = this.scheduler.schedule(this::flushQuietly, this.intervalNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void flush() throws IOException {
+        this.lock.lock();
+        try {
+            flushLocked();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Pending acknowledgements are sent first, so that a multiple-nack only covers deliveries that were not handled.
+    public void nack(long deliveryTag, boolean multiple, boolean requeue) throws IOException {
+        this.lock.lock();
+        try {
+            flushLocked();
+            this.channel.basicNack(deliveryTag, multiple, requeue);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // The deliveries are redelivered once the channel closes, so there is nothing more to do.
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to acknowledge handled deliveries.", e);
+        }
+    }
+
+    private void flushLocked() throws IOException {
+        @Nullable ScheduledFuture<?> timer = this.timer;
+        if (timer != null) {
+            timer.cancel(false);
+            this.timer = null;
+        }
+        if (this.pending == 0) {
+            return;
+        }
+
+        int count = this.pending;
+        this.pending = 0;
+        if (this.channel.isOpen()) {
+            this.channel.basicAck(this.pendingTag, count > 1);
+        }
+    }
+}
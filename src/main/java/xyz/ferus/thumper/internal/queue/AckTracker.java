@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks deliveries that may be handled out of order, and acknowledges them up to a watermark: the latest delivery
+ * that, along with every delivery before it, has been handled. A delivery still in flight holds back the
+ * acknowledgement of every delivery after it.
+ */
+public class AckTracker {
+
+    private final AckCoalescer acks;
+    private final ReentrantLock lock;
+    // In delivery order, so the head is the oldest delivery not yet acknowledged.
+    private final ArrayDeque<Pending> outstanding;
+
+    public AckTracker(AckCoalescer acks) {
+        this.acks = acks;
+        this.lock = new ReentrantLock();
+        this.outstanding = new ArrayDeque<>();
+    }
+
+    public Pending begin(long deliveryTag) {
+        Pending pending = new Pending(deliveryTag);
+        this.lock.lock();
+        try {
+            this.outstanding.addLast(pending);
+        } finally {
+            this.lock.unlock();
+        }
+        return pending;
+    }
+
+    public void complete(Pending pending) throws IOException {
+        this.lock.lock();
+        try {
+            pending.handled = true;
+            advance();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // The delivery is rejected on its own, and the watermark then moves past it without covering it.
+    public void reject(Pending pending, boolean requeue) throws IOException {
+        this.lock.lock();
+        try {
+            pending.handled = true;
+            pending.rejected = true;
+            this.acks.nack(pending.deliveryTag, false, requeue);
+            advance();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void advance() throws IOException {
+        long watermark = 0;
+        int count = 0;
+        while (!this.outstanding.isEmpty() && this.outstanding.peekFirst().handled) {
+            Pending head = this.outstanding.pollFirst();
+            // The broker refuses an acknowledgement for a tag it no longer considers outstanding, even a multiple one.
+            if (!head.rejected) {
+                watermark = head.deliveryTag;
+                count++;
+            }
+        }
+        if (count > 0) {
+            this.acks.ack(watermark, count);
+        }
+    }
+
+    public void flushQuietly() {
+        this.acks.flushQuietly();
+    }
+
+    public static final class Pending {
+        private final long deliveryTag;
+        // Guarded by the tracker's lock.
+        private boolean handled;
+        private boolean rejected;
+
+        private Pending(long deliveryTag) {
+            this.deliveryTag = deliveryTag;
+        }
+    }
+}
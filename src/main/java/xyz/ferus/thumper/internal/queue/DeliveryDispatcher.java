@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Hands deliveries to an executor, running at most a fixed number at once. When deliveries are ordered, each key is
+ * assigned to one of that many serial lanes, so deliveries sharing a key run one at a time in the order they were
+ * dispatched. Otherwise every delivery shares one lane that runs them all in parallel.
+ */
+public class DeliveryDispatcher {
+
+    private final Lane[] lanes;
+
+    public DeliveryDispatcher(Executor executor, int concurrency, boolean ordered) {
+        if (ordered) {
+            this.lanes = new Lane[concurrency];
+            for (int i = 0; i < concurrency; i++) {
+                this.lanes[i] = new Lane(executor, 1);
+            }
+        } else {
+            this.lanes = new Lane[] {new Lane(executor, concurrency)};
+        }
+    }
+
+    // Deliveries without a key are spread over the lanes by their delivery tag.
+    public void dispatch(@Nullable Object key, long deliveryTag, Runnable task) {
+        Lane lane;
+        if (this.lanes.length == 1) {
+            lane = this.lanes[0];
+        } else if (key == null) {
+            lane = this.lanes[(int) Long.remainderUnsigned(deliveryTag, this.lanes.length)];
+        } else {
+            int hash = key.hashCode();
+            lane = this.lanes[Math.floorMod(hash ^ (hash >>> 16), this.lanes.length)];
+        }
+        lane.submit(task);
+    }
+
+    private static final class Lane implements Runnable {
+        private final Executor executor;
+        private final int maxWorkers;
+        private final ConcurrentLinkedQueue<Runnable> tasks;
+        private final AtomicInteger workers;
+
+        private Lane(Executor executor, int maxWorkers) {
+            this.executor = executor;
+            this.maxWorkers = maxWorkers;
+            this.tasks = new ConcurrentLinkedQueue<>();
+            this.workers = new AtomicInteger();
+        }
+
+        private void submit(Runnable task) {
+            this.tasks.add(task);
+            if (tryStartWorker()) {
+                try {
+                    this.executor.execute(this);
+                } catch (RuntimeException e) {
+                    this.workers.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                Runnable task;
+                while ((task = this.tasks.poll()) != null) {
+                    task.run();
+                }
+                this.workers.decrementAndGet();
+                // A task queued while this worker was stopping may have seen no free worker, so it is picked up here.
+            } while (!this.tasks.isEmpty() && tryStartWorker());
+        }
+
+        private boolean tryStartWorker() {
+            while (true) {
+                int workers = this.workers.get();
+                if (workers >= this.maxWorkers) {
+                    return false;
+                }
+                if (this.workers.compareAndSet(workers, workers + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Delivery;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.internal.AbstractRabbitImpl;
+import xyz.ferus.thumper.queue.FailurePolicy;
+
+/**
+ * Applies a subscription's {@link FailurePolicy} to deliveries that could not be handled, settling them through
+ * whichever acknowledgement path the subscription uses.
+ */
+public class FailureHandler {
+
+    private static final System.Logger LOGGER = System.getLogger(FailureHandler.class.getName());
+
+    public static final String ORIGINAL_EXCHANGE_HEADER = "x-thumper-original-exchange";
+    public static final String ORIGINAL_ROUTING_KEY_HEADER = "x-thumper-original-routing-key";
+    public static final String FAILURE_HEADER = "x-thumper-failure";
+    public static final String ATTEMPT_HEADER = "x-thumper-attempt";
+
+    // How long an unused tier queue outlives its delay before the broker deletes it.
+    private static final long TIER_EXPIRY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final AbstractRabbitImpl rabbit;
+    private final String queue;
+    private final FailurePolicy policy;
+    private final FailurePolicy.@Nullable DelayedRetry delayed;
+    private final FailurePolicy terminal;
+    // When each tier queue was last declared, in nanos, since the broker only counts declarations as use.
+    private final Map<Duration, Long> declaredTiers;
+
+    public FailureHandler(AbstractRabbitImpl rabbit, String queue, FailurePolicy policy) {
+        this.rabbit = rabbit;
+        this.queue = queue;
+        this.policy = policy;
+
+        FailurePolicy afterRetries = policy instanceof FailurePolicy.Retry retry ? retry.exhausted() : policy;
+        this.delayed = afterRetries instanceof FailurePolicy.DelayedRetry delayed ? delayed : null;
+        this.terminal = this.delayed == null ? afterRetries : this.delayed.exhausted();
+        this.declaredTiers = new ConcurrentHashMap<>();
+    }
+
+    // Returns how long to wait before the given retry, or null once the delivery should be settled instead.
+    public @Nullable Duration retryBackoff(int retries) {
+        if (this.policy instanceof FailurePolicy.Retry retry && retries < retry.maxRetries()) {
+            return retry.backoff(retries);
+        }
+        return null;
+    }
+
+    public CompletableFuture<@Nullable Void> settle(Delivery delivery, Throwable failure, Settlement settlement) {
+        return settle(List.of(delivery), failure, settlement);
+    }
+
+    // Settles the deliveries of a failed batch together. A batch is only set aside in its tiers if none of its
+    // deliveries has run out of attempts, since they cannot be settled apart.
+    public CompletableFuture<@Nullable Void> settle(
+            List<Delivery> deliveries, Throwable failure, Settlement settlement) {
+        String messages = deliveries.size() == 1 ? "a message" : "a batch of " + deliveries.size() + " messages";
+        FailurePolicy.@Nullable DelayedRetry delayed = this.delayed;
+        if (delayed != null
+                && !(failure instanceof UndecodableMessageException)
+                && deliveries.stream()
+                        .allMatch(
+                                delivery -> attempt(delivery) < delayed.delays().size())) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to consume " + messages + ", retrying later.", failure);
+            return republish(deliveries, messages, settlement, delivery -> {
+                int attempt = attempt(delivery);
+                Duration delay = delayed.delays().get(attempt);
+                return this.rabbit
+                        .transform(channel -> {
+                            String tier = declareTier(channel, delay);
+                            Map<String, Object> headers = headers(delivery);
+                            headers.put(ATTEMPT_HEADER, attempt + 1);
+                            return this.rabbit.publish(
+                                    channel, "", tier, false, withHeaders(delivery, headers), delivery.getBody());
+                        })
+                        .thenCompose(Function.identity());
+            });
+        }
+
+        if (this.terminal instanceof FailurePolicy.DeadLetter deadLetter) {
+            LOGGER.log(
+                    System.Logger.Level.WARNING,
+                    "Failed to consume " + messages + ", dead-lettering to '" + deadLetter.exchange() + "'.",
+                    failure);
+            return republish(deliveries, messages, settlement, delivery -> {
+                Map<String, Object> headers = headers(delivery);
+                headers.put(FAILURE_HEADER, String.valueOf(failure));
+                String routingKey = deadLetter.routingKey() == null
+                        ? String.valueOf(headers.get(ORIGINAL_ROUTING_KEY_HEADER))
+                        : deadLetter.routingKey();
+                return this.rabbit
+                        .transform(channel -> this.rabbit.publish(
+                                channel,
+                                deadLetter.exchange(),
+                                routingKey,
+                                false,
+                                withHeaders(delivery, headers),
+                                delivery.getBody()))
+                        .thenCompose(Function.identity());
+            });
+        }
+
+        // A message that could not be decoded would only fail again once redelivered.
+        boolean requeue =
+                this.terminal instanceof FailurePolicy.Requeue && !(failure instanceof UndecodableMessageException);
+        LOGGER.log(
+                System.Logger.Level.WARNING,
+                "Failed to consume " + messages + (requeue ? ", requeueing." : ", dropping."),
+                failure);
+        try {
+            settlement.reject(requeue);
+        } catch (Exception e) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to settle " + messages + ".", e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Acknowledges the deliveries once each has been published elsewhere, or requeues them if any publish failed.
+    private CompletableFuture<@Nullable Void> republish(
+            List<Delivery> deliveries,
+            String messages,
+            Settlement settlement,
+            Function<Delivery, CompletableFuture<@Nullable Void>> publish) {
+        CompletableFuture<?>[] published = deliveries.stream().map(publish).toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(published).handle((ignored, error) -> {
+            try {
+                if (error == null) {
+                    settlement.ack();
+                } else {
+                    // Any copies already published are duplicated when the deliveries come back, which is
+                    // preferable to losing the rest.
+                    LOGGER.log(
+                            System.Logger.Level.WARNING,
+                            "Failed to republish " + messages + ", requeueing instead.",
+                            error);
+                    settlement.reject(true);
+                }
+            } catch (Exception e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to settle " + messages + ".", e);
+            }
+            return null;
+        });
+    }
+
+    // Tier queues are redeclared once half their expiry has passed, so one never expires while a message waits in it.
+    private String declareTier(Channel channel, Duration delay) throws IOException {
+        long delayMillis = delay.toMillis();
+        long expiryMillis = 2 * delayMillis + TIER_EXPIRY_MARGIN_MILLIS;
+        String tier = "thumper.retry." + this.queue + "." + delayMillis;
+
+        long now = System.nanoTime();
+        @Nullable Long declared = this.declaredTiers.get(delay);
+        if (declared != null && now - declared < TimeUnit.MILLISECONDS.toNanos(expiryMillis / 2)) {
+            return tier;
+        }
+
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-message-ttl", delayMillis);
+        arguments.put("x-expires", expiryMillis);
+        // The default exchange routes by queue name, so expired messages go straight back to the subscribed queue.
+        arguments.put("x-dead-letter-exchange", "");
+        arguments.put("x-dead-letter-routing-key", this.queue);
+        // Durable, so that persistent messages waiting in a tier survive a broker restart like the subscribed queue's.
+        channel.queueDeclare(tier, true, false, false, arguments);
+        this.declaredTiers.put(delay, now);
+        return tier;
+    }
+
+    private static int attempt(Delivery delivery) {
+        @Nullable Map<String, Object> headers = delivery.getProperties().getHeaders();
+        return headers != null && headers.get(ATTEMPT_HEADER) instanceof Number attempt ? attempt.intValue() : 0;
+    }
+
+    // A message returning from a tier arrives from the default exchange, so where it came from is only recorded the
+    // first time it fails.
+    private static Map<String, Object> headers(Delivery delivery) {
+        @Nullable Map<String, Object> existing = delivery.getProperties().getHeaders();
+        Map<String, Object> headers = existing == null ? new HashMap<>() : new HashMap<>(existing);
+        headers.putIfAbsent(ORIGINAL_EXCHANGE_HEADER, delivery.getEnvelope().getExchange());
+        headers.putIfAbsent(ORIGINAL_ROUTING_KEY_HEADER, delivery.getEnvelope().getRoutingKey());
+        return headers;
+    }
+
+    private static AMQP.BasicProperties withHeaders(Delivery delivery, Map<String, Object> headers) {
+        return delivery.getProperties().builder().headers(headers).build();
+    }
+
+    /**
+     * Settles a failed delivery, or a batch of them, on the subscription's channel.
+     */
+    public interface Settlement {
+        void ack() throws IOException;
+
+        void reject(boolean requeue) throws IOException;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import com.rabbitmq.client.Delivery;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import xyz.ferus.thumper.codec.Codec;
+import xyz.ferus.thumper.queue.Subscription;
+import xyz.ferus.thumper.queue.SubscriptionOptions;
+
+/**
+ * Publishes a queue's messages to {@link Flow.Subscriber}s, each through a subscription of its own.
+ * <p>
+ * Deliveries are buffered until the subscriber requests them, and acknowledged once emitted. The broker never has
+ * more than the prefetch count of unacknowledged deliveries out, so the buffer is bounded by it and demand turns
+ * into broker credit as acknowledgements are sent.
+ */
+public class QueueFlowPublisher<T> implements Flow.Publisher<T> {
+
+    private static final System.Logger LOGGER = System.getLogger(QueueFlowPublisher.class.getName());
+
+    private final AbstractQueueImpl queue;
+    private final Class<T> type;
+    private final SubscriptionOptions options;
+    private final FailureHandler failures;
+
+    public QueueFlowPublisher(
+            AbstractQueueImpl queue, Class<T> type, SubscriptionOptions options, FailureHandler failures) {
+        this.queue = queue;
+        this.type = type;
+        this.options = options;
+        this.failures = failures;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        FlowSubscription<T> subscription = new FlowSubscription<>(
+                subscriber, this.failures, this.queue.rabbit().executor());
+        subscriber.onSubscribe(subscription);
+
+        this.queue
+                .subscribe(this.options, (channel, acks) -> {
+                    Codec<T> codec = this.queue.rabbit().codecs().get(this.type);
+                    AckCoalescer coalescer = Objects.requireNonNull(acks, "acks");
+                    return (consumerTag, delivery) -> {
+                        try {
+                            @Nullable T decoded = AbstractQueueImpl.decode(codec, delivery);
+                            if (decoded == null) {
+                                // Subscribers must never be sent null, so it is settled like any other undecodable
+                                // message.
+                                throw new UndecodableMessageException(
+                                        new NullPointerException("The codec decoded the message to null"));
+                            }
+                            subscription.offer(new Element<>(decoded, delivery, coalescer, null));
+                        } catch (RuntimeException e) {
+                            subscription.offer(new Element<>(null, delivery, coalescer, e));
+                        }
+                    };
+                })
+                .whenComplete(subscription::attach);
+    }
+
+    // A delivery waiting to be emitted, or to be settled by the failure policy if it could not be decoded.
+    private record Element<T>(
+            @Nullable T value, Delivery delivery, AckCoalescer acks, @Nullable RuntimeException failure) {}
+
+    private static final class FlowSubscription<T> implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final FailureHandler failures;
+        private final Executor executor;
+        private final ConcurrentLinkedQueue<Element<T>> buffer;
+        private final AtomicLong requested;
+        // Signals to the subscriber are serialized by whichever thread takes this from zero.
+        private final AtomicInteger wip;
+
+        private volatile @Nullable Subscription subscription;
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private volatile @Nullable Throwable error;
+        // Set while a failed delivery is being settled, which holds back every delivery behind it.
+        private volatile boolean settling;
+        // Only read and written while draining.
+        private boolean terminated;
+
+        private FlowSubscription(Flow.Subscriber<? super T> subscriber, FailureHandler failures, Executor executor) {
+            this.subscriber = subscriber;
+            this.failures = failures;
+            this.executor = executor;
+            this.buffer = new ConcurrentLinkedQueue<>();
+            this.requested = new AtomicLong();
+            this.wip = new AtomicInteger();
+        }
+
+        private void attach(@Nullable Subscription subscription, @Nullable Throwable failure) {
+            if (failure != null) {
+                this.error = failure;
+                drain();
+                return;
+            }
+
+            this.subscription = subscription;
+            if (this.cancelled) {
+                closeSubscription();
+                return;
+            }
+            // The queue closing its subscriptions ends the stream.
+            ((SubscriptionImpl) subscription).closed().thenRun(() -> {
+                this.completed = true;
+                drain();
+            });
+        }
+
+        private void offer(Element<T> element) {
+            this.buffer.add(element);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.error = new IllegalArgumentException("Requested " + n + " elements, which must be positive");
+                closeSubscription();
+            } else {
+                this.requested.getAndAccumulate(n, (current, added) -> {
+                    long sum = current + added;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!this.cancelled) {
+                this.cancelled = true;
+                closeSubscription();
+                drain();
+            }
+        }
+
+        // Buffered deliveries are redelivered once the channel closes.
+        private void closeSubscription() {
+            @Nullable Subscription subscription = this.subscription;
+            if (subscription == null) {
+                return;
+            }
+            // This may run on the subscription's own consumer thread, so it must not wait for the channel to close.
+            this.executor.execute(() -> {
+                try {
+                    subscription.close();
+                } catch (Exception e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "Failed to close a flow subscription.", e);
+                }
+            });
+        }
+
+        private void drain() {
+            if (this.wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                if (this.terminated || this.cancelled) {
+                    this.buffer.clear();
+                } else if (this.error != null) {
+                    this.terminated = true;
+                    this.buffer.clear();
+                    this.subscriber.onError(this.error);
+                } else if (this.completed) {
+                    this.terminated = true;
+                    this.buffer.clear();
+                    this.subscriber.onComplete();
+                } else {
+                    emit();
+                }
+                missed = this.wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (this.settling) {
+                return;
+            }
+            long requested = this.requested.get();
+            long emitted = 0;
+            while (!this.cancelled) {
+                @Nullable Element<T> element = this.buffer.peek();
+                if (element == null) {
+                    break;
+                }
+                if (element.failure() != null) {
+                    // Settled in its place, so that no acknowledgement covers a delivery not yet emitted. Draining
+                    // resumes on the executor once it is settled, rather than waiting here on the consumer's thread.
+                    this.buffer.poll();
+                    this.settling = true;
+                    settle(element)
+                            .whenCompleteAsync(
+                                    (settled, failure) -> {
+                                        this.settling = false;
+                                        drain();
+                                    },
+                                    this.executor);
+                    break;
+                }
+                if (emitted == requested) {
+                    break;
+                }
+
+                this.buffer.poll();
+                if (!element.acks().open()) {
+                    // Delivered on a channel since replaced, so it has already been redelivered on the new one.
+                    continue;
+                }
+                try {
+                    this.subscriber.onNext(element.value());
+                } catch (Throwable t) {
+                    LOGGER.log(System.Logger.Level.ERROR, "A flow subscriber threw from onNext, cancelling it.", t);
+                    cancel();
+                    break;
+                }
+                try {
+                    element.acks().ack(element.delivery().getEnvelope().getDeliveryTag());
+                } catch (Exception e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "Failed to acknowledge a delivery.", e);
+                }
+                emitted++;
+            }
+
+            if (emitted != 0 && requested != Long.MAX_VALUE) {
+                this.requested.addAndGet(-emitted);
+            }
+        }
+
+        private CompletableFuture<@Nullable Void> settle(Element<T> element) {
+            try {
+                return this.failures.settle(
+                        element.delivery(),
+                        Objects.requireNonNull(element.failure(), "failure"),
+                        AbstractQueueImpl.settlement(
+                                element.acks(), element.delivery().getEnvelope().getDeliveryTag()));
+            } catch (RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to settle a delivery.", e);
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+    }
+}
@@ -25,9 +25,10 @@
 package xyz.ferus.thumper.internal.queue;
 
 import com.rabbitmq.client.Channel;
-import java.lang.ref.WeakReference;
+import java.util.concurrent.CompletableFuture;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import xyz.ferus.thumper.internal.AbstractRabbitImpl;
+import xyz.ferus.thumper.internal.util.ExceptionCatcher;
 import xyz.ferus.thumper.queue.Subscription;
 
 public class SubscriptionImpl implements Subscription {
@@ -35,19 +36,54 @@ public class SubscriptionImpl implements Subscription {
     private final AbstractRabbitImpl rabbit;
     private final AbstractQueueImpl queue;
 
-    private WeakReference<Channel> channel;
-    private String consumerTag;
+    // Each subscription owns its channel, so it is never handed to a publisher or returned to a pool.
+    private volatile Channel channel;
+    private volatile String consumerTag;
+    // Absent when the broker acknowledges deliveries itself.
+    private volatile @Nullable AckCoalescer acks;
+    private final CompletableFuture<@Nullable Void> closed;
 
-    public SubscriptionImpl(AbstractRabbitImpl rabbit, AbstractQueueImpl queue, Channel channel, String consumerTag) {
+    public SubscriptionImpl(
+            AbstractRabbitImpl rabbit,
+            AbstractQueueImpl queue,
+            Channel channel,
+            String consumerTag,
+            @Nullable AckCoalescer acks) {
         this.rabbit = rabbit;
         this.queue = queue;
-        this.channel = new WeakReference<>(channel);
+        this.channel = channel;
         this.consumerTag = consumerTag;
+        this.acks = acks;
+        this.closed = new CompletableFuture<>();
     }
 
-    public void channelChanged(Channel newChannel, String newConsumerTag) {
-        this.channel = new WeakReference<>(newChannel);
+    // Completes once the subscription has been closed, whether by its owner or by its queue.
+    public CompletableFuture<@Nullable Void> closed() {
+        return this.closed;
+    }
+
+    public void flushAcks() {
+        @Nullable AckCoalescer acks = this.acks;
+        if (acks != null) {
+            acks.flushQuietly();
+        }
+    }
+
+    public void channelChanged(Channel newChannel, String newConsumerTag, @Nullable AckCoalescer newAcks) {
+        Channel oldChannel = this.channel;
+        this.channel = newChannel;
         this.consumerTag = newConsumerTag;
+        this.acks = newAcks;
+        if (oldChannel != newChannel && oldChannel.isOpen()) {
+            // This runs on the old channel's consumer thread, so it must not wait for the channel to close.
+            this.rabbit.executor().execute(() -> {
+                try {
+                    oldChannel.close();
+                } catch (Exception ignored) {
+                    // The channel is being discarded either way.
+                }
+            });
+        }
     }
 
     @Override
@@ -58,10 +94,16 @@ public class SubscriptionImpl implements Subscription {
     @Override
     public void close() throws Exception {
         this.queue.removeSubscription(this.consumerTag);
+        this.closed.complete(null);
 
-        @Nullable Channel channel = this.channel.get();
-        if (channel != null && channel.isOpen()) {
-            channel.basicCancel(this.consumerTag);
+        ExceptionCatcher catcher = new ExceptionCatcher();
+        Channel channel = this.channel;
+        if (channel.isOpen()) {
+            catcher.execute(() -> channel.basicCancel(this.consumerTag));
+            // Deliveries handled before the cancellation are acknowledged; any still in flight are redelivered.
+            catcher.execute(this::flushAcks);
+            catcher.execute(channel::close);
         }
+        catcher.validate();
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.queue;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An async queue consumer is a functional interface that accepts a message from a queue and handles it without
+ * blocking the thread it was delivered on.
+ * @param <T> the type of messages to consume
+ */
+@FunctionalInterface
+public interface AsyncQueueConsumer<T> {
+
+    /**
+     * Accepts a message from a queue. The message is acknowledged once the returned stage completes normally, or
+     * handled by the subscription's failure policy if it completes exceptionally.
+     * @param message the message to accept
+     * @return a stage that completes once the message has been handled
+     * @throws Exception if an error occurs while accepting the message
+     */
+    CompletionStage<?> accept(T message) throws Exception;
+}
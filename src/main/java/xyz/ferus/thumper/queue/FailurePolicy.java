@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.queue;
+
+import java.time.Duration;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * What a subscription does with a message that could not be decoded or consumed. Failures are handled in place, so
+ * the subscription's channel and its other deliveries are unaffected.
+ */
+public sealed interface FailurePolicy
+        permits FailurePolicy.Requeue,
+                FailurePolicy.Drop,
+                FailurePolicy.DeadLetter,
+                FailurePolicy.Retry,
+                FailurePolicy.DelayedRetry {
+
+    /**
+     * Returns a policy that rejects the message and returns it to the queue, to be delivered again. A message that
+     * fails every time is redelivered forever, so this is best preceded by a
+     * {@link #retry(int, Duration, FailurePolicy) retry}. Messages that could
+     * not be decoded are dropped instead, since redelivering them cannot help.
+     * @return the policy
+     */
+    static FailurePolicy requeue() {
+        return new Requeue();
+    }
+
+    /**
+     * Returns a policy that rejects the message without returning it to the queue. The broker dead-letters it if the
+     * queue has a dead-letter exchange.
+     * @return the policy
+     */
+    static FailurePolicy drop() {
+        return new Drop();
+    }
+
+    /**
+     * Returns a policy that publishes the message to an exchange with its original routing key, and then
+     * acknowledges it.
+     * @param exchange the name of the exchange
+     * @return the policy
+     * @see #deadLetter(String, String)
+     */
+    static FailurePolicy deadLetter(String exchange) {
+        return new DeadLetter(exchange, null);
+    }
+
+    /**
+     * Returns a policy that publishes the message to an exchange, and then acknowledges it. The message keeps its
+     * properties, and gains headers naming the exchange and routing key it was first published with and the failure
+     * that led to it being dead-lettered. If the publish fails, the message is requeued instead.
+     * @param exchange the name of the exchange
+     * @param routingKey the routing key to publish with
+     * @return the policy
+     */
+    static FailurePolicy deadLetter(String exchange, String routingKey) {
+        return new DeadLetter(exchange, routingKey);
+    }
+
+    /**
+     * Returns a policy that consumes the message again, waiting {@code backoff} before the first retry and twice as
+     * long before each one after, and hands the message to another policy once {@code maxRetries} retries have
+     * failed. That policy may be a {@link #delayedRetry(List, FailurePolicy) delayed retry}. Messages that could not
+     * be decoded are not retried.
+     * <p>
+     * The message keeps its place in the subscription's in-flight window while it is retried, and stays
+     * unacknowledged, so RabbitMQ closes the channel if it is held past the broker's {@code consumer_timeout}. The
+     * backoffs of every retry may therefore add up to at most {@link Retry#MAX_TOTAL_BACKOFF}; use a
+     * {@link #delayedRetry(List, FailurePolicy) delayed retry} to wait any longer.
+     * @param maxRetries the maximum number of retries
+     * @param backoff how long to wait before the first retry
+     * @param exhausted the policy for messages that failed every retry
+     * @return the policy
+     * @throws IllegalArgumentException if the backoffs add up to more than {@link Retry#MAX_TOTAL_BACKOFF}
+     */
+    static FailurePolicy retry(int maxRetries, Duration backoff, FailurePolicy exhausted) {
+        return new Retry(maxRetries, backoff, exhausted);
+    }
+
+    /**
+     * Returns a policy that sets the message aside and redelivers it after a delay, handing it to another policy
+     * once it has been redelivered after every delay. Messages that could not be decoded are not retried.
+     * <p>
+     * Each delay is a tier: a queue declared alongside the subscribed queue, whose messages expire after the delay
+     * and are then dead-lettered back to the subscribed queue. A failed message is acknowledged once it has been
+     * published to the tier for its attempt, which is counted in a header, so waiting messages take up neither a
+     * consumer thread nor room in the prefetch window. Tier queues delete themselves once they have been unused for
+     * a while. Tier queues are durable, so persistent messages waiting in them survive a broker restart, but they
+     * are lost if the subscribed queue is deleted in the meantime.
+     * <p>
+     * For example, {@code delayedRetry(List.of(ofSeconds(1), ofSeconds(10), ofMinutes(1)), drop())} redelivers a
+     * message after one second, then ten seconds, then a minute, and drops it if it fails a fourth time.
+     * @param delays how long to wait before each redelivery
+     * @param exhausted the policy for messages that failed every redelivery
+     * @return the policy
+     * @throws IllegalArgumentException if a delay is shorter than a millisecond
+     */
+    static FailurePolicy delayedRetry(List<Duration> delays, FailurePolicy exhausted) {
+        return new DelayedRetry(delays, exhausted);
+    }
+
+    /**
+     * Rejects the message and returns it to the queue.
+     */
+    record Requeue() implements FailurePolicy {}
+
+    /**
+     * Rejects the message without returning it to the queue.
+     */
+    record Drop() implements FailurePolicy {}
+
+    /**
+     * Publishes the message to an exchange, and then acknowledges it.
+     * @param exchange the name of the exchange
+     * @param routingKey the routing key to publish with, or {@code null} to use the message's own
+     */
+    record DeadLetter(String exchange, @Nullable String routingKey) implements FailurePolicy {}
+
+    /**
+     * Consumes the message again with a doubling backoff, and hands it to another policy once every retry failed.
+     * @param maxRetries the maximum number of retries
+     * @param backoff how long to wait before the first retry
+     * @param exhausted the policy for messages that failed every retry
+     */
+    record Retry(int maxRetries, Duration backoff, FailurePolicy exhausted) implements FailurePolicy {
+
+        /**
+         * The longest the backoffs of every retry may add up to. This is well below RabbitMQ's default
+         * {@code consumer_timeout} of thirty minutes, leaving room for the attempts themselves.
+         */
+        public static final Duration MAX_TOTAL_BACKOFF = Duration.ofMinutes(5);
+
+        /**
+         * Create a new Retry.
+         * @param maxRetries the maximum number of retries
+         * @param backoff how long to wait before the first retry
+         * @param exhausted the policy for messages that failed every retry
+         */
+        public Retry {
+            if (maxRetries < 1) {
+                throw new IllegalArgumentException("Max retries must be at least 1, got " + maxRetries);
+            }
+            if (backoff.isNegative()) {
+                throw new IllegalArgumentException("Backoff must not be negative, got " + backoff);
+            }
+            Duration total = Duration.ZERO;
+            for (int retry = 0; retry < maxRetries && !backoff.isZero(); retry++) {
+                total = total.plus(backoff.multipliedBy(1L << Math.min(retry, 20)));
+                if (total.compareTo(MAX_TOTAL_BACKOFF) > 0) {
+                    throw new IllegalArgumentException(maxRetries + " retries starting at " + backoff
+                            + " back off for longer than " + MAX_TOTAL_BACKOFF + "; use a delayed retry instead");
+                }
+            }
+            // A delayed retry may follow, so that a message is retried in place before it is set aside.
+            if (exhausted instanceof Retry) {
+                throw new IllegalArgumentException("A retry policy cannot hand messages to another retry policy");
+            }
+        }
+
+        /**
+         * Returns how long to wait before a retry.
+         * @param retry the number of retries made so far
+         * @return the backoff before the next retry
+         */
+        public Duration backoff(int retry) {
+            return this.backoff.multipliedBy(1L << Math.min(retry, 20));
+        }
+    }
+
+    /**
+     * Sets the message aside in a tier queue for each delay in turn, and hands it to another policy once every
+     * redelivery failed.
+     * @param delays how long to wait before each redelivery
+     * @param exhausted the policy for messages that failed every redelivery
+     */
+    record DelayedRetry(List<Duration> delays, FailurePolicy exhausted) implements FailurePolicy {
+
+        /**
+         * Create a new DelayedRetry.
+         * @param delays how long to wait before each redelivery
+         * @param exhausted the policy for messages that failed every redelivery
+         */
+        public DelayedRetry {
+            if (delays.isEmpty()) {
+                throw new IllegalArgumentException("At least one delay is required");
+            }
+            for (Duration delay : delays) {
+                // Tier queues expire their messages by a whole number of milliseconds.
+                if (delay.compareTo(Duration.ofMillis(1)) < 0) {
+                    throw new IllegalArgumentException("Delays must be at least 1 millisecond, got " + delay);
+                }
+            }
+            if (exhausted instanceof Retry || exhausted instanceof DelayedRetry) {
+                throw new IllegalArgumentException("A retry policy cannot hand messages to another retry policy");
+            }
+            delays = List.copyOf(delays);
+        }
+    }
+}
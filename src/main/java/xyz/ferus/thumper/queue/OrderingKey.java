@@ -0,0 +1,63 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.queue;
+
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Extracts the key that orders deliveries dispatched to a subscription's workers. Deliveries with equal keys are
+ * handled one at a time, in the order they were delivered, while deliveries with different keys may be handled in
+ * parallel.
+ */
+@FunctionalInterface
+public interface OrderingKey {
+
+    /**
+     * Returns an ordering key that orders deliveries sharing a routing key.
+     * @return the ordering key
+     */
+    static OrderingKey routingKey() {
+        return (routingKey, headers) -> routingKey;
+    }
+
+    /**
+     * Returns an ordering key that orders deliveries sharing the value of a header. Deliveries without the header are
+     * not ordered.
+     * @param name the name of the header
+     * @return the ordering key
+     */
+    static OrderingKey header(String name) {
+        return (routingKey, headers) -> headers == null ? null : headers.get(name);
+    }
+
+    /**
+     * Extracts the key of a delivery.
+     * @param routingKey the routing key the message was published with
+     * @param headers the headers of the message, if any
+     * @return the key, or {@code null} if the delivery need not be ordered
+     */
+    @Nullable Object key(String routingKey, @Nullable Map<String, Object> headers);
+}
@@ -25,6 +25,7 @@
 package xyz.ferus.thumper.queue;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * A queue is a named entity that accepts messages from producers and routes them to consumers.
@@ -38,11 +39,102 @@ public interface Queue extends AutoCloseable {
     String name();
 
     /**
-     * Subscribes a consumer to this queue.
+     * Subscribes a consumer to this queue with the default subscription options of the Rabbit instance.
      * @param type the type of messages to consume
      * @param consumer the consumer to subscribe
      * @return a future that completes when the consumer has been subscribed
      * @param <T> the type of messages to consume
+     * @see xyz.ferus.thumper.RabbitBuilder#subscriptionOptions(SubscriptionOptions)
      */
     <T> CompletableFuture<Subscription> subscribe(Class<T> type, QueueConsumer<T> consumer);
+
+    /**
+     * Subscribes a consumer to this queue.
+     * @param type the type of messages to consume
+     * @param consumer the consumer to subscribe
+     * @param options the options for the subscription
+     * @return a future that completes when the consumer has been subscribed
+     * @param <T> the type of messages to consume
+     */
+    <T> CompletableFuture<Subscription> subscribe(
+            Class<T> type, QueueConsumer<T> consumer, SubscriptionOptions options);
+
+    /**
+     * Subscribes a batch consumer to this queue with the default subscription options of the Rabbit instance.
+     * @param type the type of messages to consume
+     * @param consumer the batch consumer to subscribe
+     * @return a future that completes when the consumer has been subscribed
+     * @param <T> the type of messages to consume
+     * @see #subscribeBatch(Class, BatchQueueConsumer, SubscriptionOptions)
+     */
+    <T> CompletableFuture<Subscription> subscribeBatch(Class<T> type, BatchQueueConsumer<T> consumer);
+
+    /**
+     * Subscribes a batch consumer to this queue.
+     * <p>
+     * Deliveries are collected until the batch reaches its maximum size, or until the first of them has waited for
+     * the maximum wait, and are then handed to the consumer at once. Batches are handled one at a time, in delivery
+     * order. A handled batch is acknowledged with a single frame, and a failed batch is handled as a whole by the
+     * failure policy. The prefetch count should be at least the batch size, or batches are cut short by the broker.
+     * @param type the type of messages to consume
+     * @param consumer the batch consumer to subscribe
+     * @param options the options for the subscription
+     * @return a future that completes when the consumer has been subscribed
+     * @param <T> the type of messages to consume
+     * @see SubscriptionOptions.Builder#batch(int, java.time.Duration)
+     */
+    <T> CompletableFuture<Subscription> subscribeBatch(
+            Class<T> type, BatchQueueConsumer<T> consumer, SubscriptionOptions options);
+
+    /**
+     * Subscribes an async consumer to this queue with the default subscription options of the Rabbit instance.
+     * @param type the type of messages to consume
+     * @param consumer the async consumer to subscribe
+     * @return a future that completes when the consumer has been subscribed
+     * @param <T> the type of messages to consume
+     * @see #subscribeAsync(Class, AsyncQueueConsumer, SubscriptionOptions)
+     */
+    <T> CompletableFuture<Subscription> subscribeAsync(Class<T> type, AsyncQueueConsumer<T> consumer);
+
+    /**
+     * Subscribes an async consumer to this queue.
+     * <p>
+     * Each delivery is handed to the consumer as soon as it arrives, without waiting for earlier deliveries to be
+     * handled, so a single subscription can keep many operations in flight. The number in flight is bounded by the
+     * prefetch count, and subscriptions without one use a prefetch count of 256. A delivery is acknowledged once its
+     * stage completes and every earlier delivery has been settled, and handled on its own by the failure policy if
+     * its stage fails. Retries wait without blocking a thread.
+     * @param type the type of messages to consume
+     * @param consumer the async consumer to subscribe
+     * @param options the options for the subscription
+     * @return a future that completes when the consumer has been subscribed
+     * @param <T> the type of messages to consume
+     */
+    <T> CompletableFuture<Subscription> subscribeAsync(
+            Class<T> type, AsyncQueueConsumer<T> consumer, SubscriptionOptions options);
+
+    /**
+     * Returns a publisher of this queue's messages, subscribed with the default subscription options of the Rabbit
+     * instance.
+     * @param type the type of messages to consume
+     * @return the publisher
+     * @param <T> the type of messages to consume
+     * @see #flowPublisher(Class, SubscriptionOptions)
+     */
+    <T> Flow.Publisher<T> flowPublisher(Class<T> type);
+
+    /**
+     * Returns a publisher of this queue's messages, for use with Reactive Streams.
+     * <p>
+     * Each subscriber gets a subscription of its own, and completes once this queue is closed. Messages are emitted
+     * only as the subscriber requests them, and acknowledged once emitted. Until then, they count against the
+     * prefetch count, so the broker stops delivering once that many messages are waiting for demand. Subscriptions
+     * without a prefetch count use one of 256. The publisher always acknowledges messages itself, whatever the ack
+     * mode. Messages that could not be decoded are handled by the failure policy.
+     * @param type the type of messages to consume
+     * @param options the options for each subscription
+     * @return the publisher
+     * @param <T> the type of messages to consume
+     */
+    <T> Flow.Publisher<T> flowPublisher(Class<T> type, SubscriptionOptions options);
 }
@@ -0,0 +1,372 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.queue;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Options for a subscription to a queue.
+ * @param prefetchCount the number of unacknowledged messages the broker may deliver at once, or {@code 0} for no
+ *                      limit
+ * @param globalPrefetch whether the prefetch count is shared by every consumer on the subscription's channel, rather
+ *                       than applying to each consumer separately
+ * @param ackMode how delivered messages are acknowledged
+ * @param ackBatchSize the number of handled messages that are acknowledged together
+ * @param ackInterval how long a handled message may wait to be acknowledged together with others
+ * @param concurrency the number of deliveries handled at once, where {@code 1} handles them on the channel's own
+ *                    dispatch thread
+ * @param ordering the key that orders deliveries handled in parallel, or {@code null} if they are not ordered
+ * @param dispatchExecutor the executor deliveries are handled on when handled in parallel, or {@code null} to use the
+ *                         executor of the Rabbit instance
+ * @param batchSize the maximum number of messages in a batch handed to a batch consumer
+ * @param batchWait how long a batch may wait to fill before it is handed to a batch consumer
+ * @param failurePolicy what is done with messages that could not be decoded or consumed
+ */
+public record SubscriptionOptions(
+        int prefetchCount,
+        boolean globalPrefetch,
+        AckMode ackMode,
+        int ackBatchSize,
+        Duration ackInterval,
+        int concurrency,
+        @Nullable OrderingKey ordering,
+        @Nullable Executor dispatchExecutor,
+        int batchSize,
+        Duration batchWait,
+        FailurePolicy failurePolicy) {
+
+    private static final SubscriptionOptions DEFAULT = new SubscriptionOptions(
+            0,
+            false,
+            AckMode.MANUAL,
+            100,
+            Duration.ofMillis(100),
+            1,
+            null,
+            null,
+            100,
+            Duration.ofMillis(100),
+            FailurePolicy.retry(3, Duration.ofMillis(100), FailurePolicy.drop()));
+
+    /**
+     * Create a new SubscriptionOptions.
+     * @param prefetchCount the number of unacknowledged messages the broker may deliver at once, or {@code 0} for no
+     *                      limit
+     * @param globalPrefetch whether the prefetch count is shared by every consumer on the subscription's channel
+     * @param ackMode how delivered messages are acknowledged
+     * @param ackBatchSize the number of handled messages that are acknowledged together
+     * @param ackInterval how long a handled message may wait to be acknowledged together with others
+     * @param concurrency the number of deliveries handled at once
+     * @param ordering the key that orders deliveries handled in parallel, or {@code null} if they are not ordered
+     * @param dispatchExecutor the executor deliveries are handled on when handled in parallel, or {@code null} to use
+     *                         the executor of the Rabbit instance
+     * @param batchSize the maximum number of messages in a batch handed to a batch consumer
+     * @param batchWait how long a batch may wait to fill before it is handed to a batch consumer
+     * @param failurePolicy what is done with messages that could not be decoded or consumed
+     */
+    public SubscriptionOptions {
+        if (prefetchCount < 0 || prefetchCount > 65535) {
+            throw new IllegalArgumentException("Prefetch count must be between 0 and 65535, got " + prefetchCount);
+        }
+        if (ackBatchSize < 1) {
+            throw new IllegalArgumentException("Ack batch size must be at least 1, got " + ackBatchSize);
+        }
+        if (ackInterval.isNegative()) {
+            throw new IllegalArgumentException("Ack interval must not be negative, got " + ackInterval);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1, got " + concurrency);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + batchSize);
+        }
+        if (batchWait.isNegative()) {
+            throw new IllegalArgumentException("Batch wait must not be negative, got " + batchWait);
+        }
+    }
+
+    /**
+     * Returns the default options, which do not limit prefetching, handle one message at a time, acknowledge
+     * messages once handled, in batches of up to 100 or every 100 milliseconds, and retry messages that fail three
+     * times, 100, 200 and 400 milliseconds apart, before dropping them.
+     * <p>
+     * Failed messages are not requeued by default, since a message that fails every time would otherwise be
+     * redelivered forever. A dropped message is rejected without being requeued, so the broker dead-letters it if
+     * the queue has a dead-letter exchange.
+     * @return the default options
+     */
+    public static SubscriptionOptions defaultOptions() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a builder for creating subscription options.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a builder initialized with these options.
+     * @return the builder
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * The number of handled messages that are acknowledged together, which is at most half the prefetch count so
+     * that the broker never runs out of deliveries while acknowledgements are held back.
+     * @return the effective ack batch size
+     */
+    public int effectiveAckBatchSize() {
+        return this.prefetchCount == 0
+                ? this.ackBatchSize
+                : Math.min(this.ackBatchSize, Math.max(1, this.prefetchCount / 2));
+    }
+
+    /**
+     * A builder for creating subscription options.
+     */
+    public static class Builder {
+
+        /**
+         * The number of unacknowledged messages the broker may deliver at once.
+         */
+        private int prefetchCount;
+
+        /**
+         * Whether the prefetch count is shared by every consumer on the channel.
+         */
+        private boolean globalPrefetch;
+
+        /**
+         * How delivered messages are acknowledged.
+         */
+        private AckMode ackMode;
+
+        /**
+         * The number of handled messages that are acknowledged together.
+         */
+        private int ackBatchSize;
+
+        /**
+         * How long a handled message may wait to be acknowledged together with others.
+         */
+        private Duration ackInterval;
+
+        /**
+         * The number of deliveries handled at once.
+         */
+        private int concurrency;
+
+        /**
+         * The key that orders deliveries handled in parallel.
+         */
+        @Nullable private OrderingKey ordering;
+
+        /**
+         * The executor deliveries are handled on when handled in parallel.
+         */
+        @Nullable private Executor dispatchExecutor;
+
+        /**
+         * The maximum number of messages in a batch handed to a batch consumer.
+         */
+        private int batchSize;
+
+        /**
+         * How long a batch may wait to fill before it is handed to a batch consumer.
+         */
+        private Duration batchWait;
+
+        /**
+         * What is done with messages that could not be decoded or consumed.
+         */
+        private FailurePolicy failurePolicy;
+
+        private Builder() {
+            this(DEFAULT);
+        }
+
+        private Builder(SubscriptionOptions options) {
+            this.prefetchCount = options.prefetchCount();
+            this.globalPrefetch = options.globalPrefetch();
+            this.ackMode = options.ackMode();
+            this.ackBatchSize = options.ackBatchSize();
+            this.ackInterval = options.ackInterval();
+            this.concurrency = options.concurrency();
+            this.ordering = options.ordering();
+            this.dispatchExecutor = options.dispatchExecutor();
+            this.batchSize = options.batchSize();
+            this.batchWait = options.batchWait();
+            this.failurePolicy = options.failurePolicy();
+        }
+
+        /**
+         * Sets the number of unacknowledged messages the broker may deliver at once.
+         * <p>
+         * This bounds the messages held in memory by a subscription, and spreads a busy queue fairly across its
+         * consumers. Higher values trade memory for throughput.
+         * @param prefetchCount the prefetch count, or {@code 0} for no limit
+         * @return this builder
+         */
+        public Builder prefetch(int prefetchCount) {
+            this.prefetchCount = prefetchCount;
+            return this;
+        }
+
+        /**
+         * Sets whether the prefetch count is shared by every consumer on the subscription's channel, rather than
+         * applying to each consumer separately.
+         * @param globalPrefetch whether the prefetch count is shared
+         * @return this builder
+         */
+        public Builder globalPrefetch(boolean globalPrefetch) {
+            this.globalPrefetch = globalPrefetch;
+            return this;
+        }
+
+        /**
+         * Sets how delivered messages are acknowledged.
+         * @param ackMode the ack mode
+         * @return this builder
+         */
+        public Builder ackMode(AckMode ackMode) {
+            this.ackMode = ackMode;
+            return this;
+        }
+
+        /**
+         * Sets how manual acknowledgements are coalesced.
+         * <p>
+         * Handled messages are acknowledged with a single frame once {@code batchSize} of them are waiting, or once
+         * the first of them has waited for {@code interval}, whichever comes first. The batch size is capped at half
+         * the prefetch count. A batch size of 1 acknowledges every message on its own.
+         * @param batchSize the number of handled messages that are acknowledged together
+         * @param interval how long a handled message may wait to be acknowledged together with others
+         * @return this builder
+         */
+        public Builder ackCoalescing(int batchSize, Duration interval) {
+            this.ackBatchSize = batchSize;
+            this.ackInterval = interval;
+            return this;
+        }
+
+        /**
+         * Sets how many deliveries are handled at once, without ordering those handled in parallel.
+         * @param concurrency the number of deliveries handled at once
+         * @return this builder
+         * @see #dispatch(int, OrderingKey)
+         */
+        public Builder dispatch(int concurrency) {
+            this.concurrency = concurrency;
+            this.ordering = null;
+            return this;
+        }
+
+        /**
+         * Sets how many deliveries are handled at once, and how those handled in parallel are ordered.
+         * <p>
+         * With a concurrency of 1, deliveries are decoded and handled one at a time on the channel's own dispatch
+         * thread. Otherwise they are handed to the dispatch executor, where deliveries with equal ordering keys are
+         * handled one at a time in delivery order and the rest in parallel. Either way, a delivery is only
+         * acknowledged once it and every delivery before it have been handled. Deliveries waiting for a worker are
+         * held in memory, so a prefetch count should bound them.
+         * @param concurrency the number of deliveries handled at once
+         * @param ordering the key that orders deliveries handled in parallel
+         * @return this builder
+         * @see OrderingKey#routingKey()
+         * @see OrderingKey#header(String)
+         */
+        public Builder dispatch(int concurrency, OrderingKey ordering) {
+            this.concurrency = concurrency;
+            this.ordering = ordering;
+            return this;
+        }
+
+        /**
+         * Sets the executor deliveries are handled on when handled in parallel. By default, the executor of the
+         * Rabbit instance is used.
+         * @param dispatchExecutor the executor
+         * @return this builder
+         */
+        public Builder dispatchExecutor(Executor dispatchExecutor) {
+            this.dispatchExecutor = dispatchExecutor;
+            return this;
+        }
+
+        /**
+         * Sets how batch consumers collect their batches. A batch is handed to the consumer once it holds
+         * {@code maxSize} messages, or once its first message has waited for {@code maxWait}, whichever comes first.
+         * Subscriptions that are not batched ignore this.
+         * @param maxSize the maximum number of messages in a batch
+         * @param maxWait how long a batch may wait to fill
+         * @return this builder
+         * @see Queue#subscribeBatch(Class, BatchQueueConsumer, SubscriptionOptions)
+         */
+        public Builder batch(int maxSize, Duration maxWait) {
+            this.batchSize = maxSize;
+            this.batchWait = maxWait;
+            return this;
+        }
+
+        /**
+         * Sets what is done with messages that could not be decoded or consumed. By default they are retried three
+         * times, 100, 200 and 400 milliseconds apart, and then dropped.
+         * <p>
+         * When the broker acknowledges deliveries itself, a failed message has already left the queue, so it can
+         * only be retried or dead-lettered.
+         * @param failurePolicy the failure policy
+         * @return this builder
+         */
+        public Builder onFailure(FailurePolicy failurePolicy) {
+            this.failurePolicy = failurePolicy;
+            return this;
+        }
+
+        /**
+         * Builds the subscription options.
+         * @return the subscription options
+         */
+        public SubscriptionOptions build() {
+            return new SubscriptionOptions(
+                    this.prefetchCount,
+                    this.globalPrefetch,
+                    this.ackMode,
+                    this.ackBatchSize,
+                    this.ackInterval,
+                    this.concurrency,
+                    this.ordering,
+                    this.dispatchExecutor,
+                    this.batchSize,
+                    this.batchWait,
+                    this.failurePolicy);
+        }
+    }
+}
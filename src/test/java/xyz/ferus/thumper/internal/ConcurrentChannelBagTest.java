@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.rabbitmq.client.Channel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentChannelBagTest {
+
+    private final List<Channel> created = new CopyOnWriteArrayList<>();
+
+    private ConcurrentChannelBag bag(int maxTotal) {
+        GenericObjectPoolConfig<Channel> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(maxTotal);
+        config.setTestOnBorrow(true);
+        config.setTestOnReturn(true);
+        return bag(config);
+    }
+
+    private ConcurrentChannelBag bag(GenericObjectPoolConfig<Channel> config) {
+        return new ConcurrentChannelBag(
+                () -> {
+                    Channel channel = StubChannel.open();
+                    this.created.add(channel);
+                    return channel;
+                },
+                config);
+    }
+
+    @Test
+    void reusesReleasedChannel() throws Exception {
+        ConcurrentChannelBag bag = bag(4);
+        Channel first = bag.borrow();
+        bag.release(first);
+        assertSame(first, bag.borrow());
+        assertEquals(1, this.created.size());
+    }
+
+    @Test
+    void invalidateClosesChannelAndFreesCapacity() throws Exception {
+        ConcurrentChannelBag bag = bag(1);
+        Channel first = bag.borrow();
+        bag.invalidate(first);
+        assertFalse(first.isOpen());
+
+        Channel second = bag.borrow();
+        assertNotSame(first, second);
+        assertEquals(2, this.created.size());
+    }
+
+    @Test
+    void closesChannelReleasedAfterClose() throws Exception {
+        ConcurrentChannelBag bag = bag(2);
+        Channel released = bag.borrow();
+        Channel invalidated = bag.borrow();
+        bag.close();
+
+        bag.release(released);
+        bag.invalidate(invalidated);
+        assertFalse(released.isOpen());
+        assertFalse(invalidated.isOpen());
+        assertEquals(0, bag.idle());
+    }
+
+    @Test
+    void dropsClosedChannelOnBorrow() throws Exception {
+        ConcurrentChannelBag bag = bag(1);
+        Channel first = bag.borrow();
+        bag.release(first);
+        StubChannel.of(first).kill();
+
+        Channel second = bag.borrow();
+        assertNotSame(first, second);
+        assertEquals(0, bag.idle());
+    }
+
+    @Test
+    void failsFastWhenExhaustedWithoutBlocking() throws Exception {
+        GenericObjectPoolConfig<Channel> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(1);
+        config.setBlockWhenExhausted(false);
+        ConcurrentChannelBag bag = bag(config);
+        bag.borrow();
+        assertThrows(NoSuchElementException.class, bag::borrow);
+    }
+
+    @Test
+    void timesOutWaitingForIdleChannel() throws Exception {
+        GenericObjectPoolConfig<Channel> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(1);
+        config.setMaxWait(Duration.ofMillis(50));
+        ConcurrentChannelBag bag = bag(config);
+        bag.borrow();
+        assertThrows(NoSuchElementException.class, bag::borrow);
+    }
+
+    @Test
+    void handsReleasedChannelToWaiter() throws Exception {
+        ConcurrentChannelBag bag = bag(1);
+        Channel channel = bag.borrow();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Channel> waiter = executor.submit(bag::borrow);
+            while (bag.waiting() == 0) {
+                Thread.onSpinWait();
+            }
+            bag.release(channel);
+            assertSame(channel, waiter.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void neverLeasesChannelTwiceUnderContention() throws Exception {
+        int maxTotal = 4;
+        int threads = 32;
+        int iterations = 5_000;
+        ConcurrentChannelBag bag = bag(maxTotal);
+        Set<Channel> leased = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < iterations; i++) {
+                    Channel channel = bag.borrow();
+                    assertTrue(channel.isOpen(), "Borrowed a closed channel");
+                    assertTrue(leased.add(channel), "Channel leased twice");
+                    assertTrue(leased.size() <= maxTotal, "More channels leased than the pool allows");
+                    leased.remove(channel);
+                    // Invalidate now and then, so removal races with claims from the shared list and hand-offs.
+                    if (random.nextInt(64) == 0) {
+                        bag.invalidate(channel);
+                    } else {
+                        bag.release(channel);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long live = this.created.stream().filter(Channel::isOpen).count();
+        assertTrue(live <= maxTotal, "Live channels exceed maxTotal: " + live);
+        assertEquals(live, bag.idle());
+        for (Channel channel : this.created) {
+            assertTrue(StubChannel.of(channel).closes() <= 1, "Channel closed more than once");
+        }
+
+        bag.close();
+        assertTrue(this.created.stream().noneMatch(Channel::isOpen));
+        assertThrows(IllegalStateException.class, bag::borrow);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ConnectionGroupTest {
+
+    private final Map<Channel, Integer> connectionOf = new IdentityHashMap<>();
+    private final Map<Channel, List<ShutdownListener>> listeners = new IdentityHashMap<>();
+
+    @Test
+    void placesConsumersOnLeastLoadedConnection() throws Exception {
+        ConnectionGroup group = new ConnectionGroup(List.of(connection(0), connection(1)));
+        assertEquals(0, connectionOf(group.createConsumerChannel()));
+        assertEquals(1, connectionOf(group.createConsumerChannel()));
+        assertEquals(0, connectionOf(group.createConsumerChannel()));
+    }
+
+    @Test
+    void keepsCountingChannelsThatRecover() throws Exception {
+        ConnectionGroup group = new ConnectionGroup(List.of(connection(0), connection(1)));
+        Channel first = group.createConsumerChannel();
+        group.createConsumerChannel();
+
+        // Each lost connection shuts the channel down, and recovery reopens it.
+        shutDown(first, new ShutdownSignalException(true, false, null, null));
+        shutDown(first, new ShutdownSignalException(true, false, null, null));
+
+        assertEquals(0, connectionOf(group.createConsumerChannel()));
+        assertEquals(1, connectionOf(group.createConsumerChannel()));
+    }
+
+    @Test
+    void stopsCountingClosedChannelsOnce() throws Exception {
+        ConnectionGroup group = new ConnectionGroup(List.of(connection(0), connection(1)));
+        Channel first = group.createConsumerChannel();
+        Channel second = group.createConsumerChannel();
+        group.createConsumerChannel();
+
+        shutDown(first, new ShutdownSignalException(false, true, null, null));
+        shutDown(first, new ShutdownSignalException(true, true, null, null));
+        // A channel-level error is not recovered either.
+        shutDown(second, new ShutdownSignalException(false, false, null, null));
+
+        // One consumer is left on the first connection and none on the second.
+        assertEquals(1, connectionOf(group.createConsumerChannel()));
+        assertEquals(0, connectionOf(group.createConsumerChannel()));
+    }
+
+    private int connectionOf(Channel channel) {
+        return this.connectionOf.get(channel);
+    }
+
+    private void shutDown(Channel channel, ShutdownSignalException cause) {
+        this.listeners.get(channel).forEach(listener -> listener.shutdownCompleted(cause));
+    }
+
+    private Connection connection(int index) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("createChannel")) {
+                        Channel channel = channel();
+                        this.connectionOf.put(channel, index);
+                        return channel;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    // Recoverable, like the channels of an autorecovering connection.
+    private Channel channel() {
+        List<ShutdownListener> added = new ArrayList<>();
+        Channel channel = (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(),
+                new Class<?>[] {Channel.class, Recoverable.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "addShutdownListener" -> {
+                        added.add((ShutdownListener) args[0]);
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        this.listeners.put(channel, added);
+        return channel;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+import xyz.ferus.thumper.BackpressurePolicy;
+import xyz.ferus.thumper.exchange.PublishPriority;
+
+class PublishLimiterTest {
+
+    private final PublishLimiter limiter =
+            new PublishLimiter(Integer.MAX_VALUE, Long.MAX_VALUE, BackpressurePolicy.WAIT);
+
+    @Test
+    void repeatedBlockIsCountedOnce() {
+        StubConnection connection = new StubConnection(this.limiter);
+        connection.blocked();
+        connection.blocked();
+
+        CompletableFuture<@Nullable Void> held = acquire();
+        assertFalse(held.isDone());
+        connection.unblocked();
+        assertTrue(held.isDone());
+    }
+
+    @Test
+    void closingBlockedConnectionReleasesPublishes() {
+        StubConnection connection = new StubConnection(this.limiter);
+        connection.blocked();
+        CompletableFuture<@Nullable Void> held = acquire();
+
+        connection.shutdown();
+        assertTrue(held.isDone());
+        assertTrue(acquire().isDone());
+    }
+
+    @Test
+    void recoveringBlockedConnectionReleasesPublishes() {
+        StubConnection connection = new StubConnection(this.limiter);
+        connection.blocked();
+        CompletableFuture<@Nullable Void> held = acquire();
+
+        connection.recovered();
+        assertTrue(held.isDone());
+    }
+
+    @Test
+    void holdsPublishesWhileAnyConnectionIsBlocked() {
+        StubConnection first = new StubConnection(this.limiter);
+        StubConnection second = new StubConnection(this.limiter);
+        first.blocked();
+        second.blocked();
+        CompletableFuture<@Nullable Void> held = acquire();
+
+        first.unblocked();
+        assertFalse(held.isDone());
+        second.unblocked();
+        assertTrue(held.isDone());
+    }
+
+    private CompletableFuture<@Nullable Void> acquire() {
+        return this.limiter.acquire(PublishPriority.NORMAL, 1, 1);
+    }
+
+    private static final class StubConnection {
+
+        private final List<BlockedListener> blockedListeners = new ArrayList<>();
+        private final List<ShutdownListener> shutdownListeners = new ArrayList<>();
+        private final List<RecoveryListener> recoveryListeners = new ArrayList<>();
+        private final Connection connection;
+
+        private StubConnection(PublishLimiter limiter) {
+            this.connection = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class, Recoverable.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "addBlockedListener" -> this.blockedListeners.add((BlockedListener) args[0]);
+                            case "addShutdownListener" -> this.shutdownListeners.add((ShutdownListener) args[0]);
+                            case "addRecoveryListener" -> this.recoveryListeners.add((RecoveryListener) args[0]);
+                            default -> throw new UnsupportedOperationException(method.getName());
+                        }
+                        return null;
+                    });
+            limiter.attach(this.connection);
+        }
+
+        private void blocked() {
+            for (BlockedListener listener : this.blockedListeners) {
+                try {
+                    listener.handleBlocked("low on memory");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private void unblocked() {
+            for (BlockedListener listener : this.blockedListeners) {
+                try {
+                    listener.handleUnblocked();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private void shutdown() {
+            ShutdownSignalException cause = new ShutdownSignalException(true, false, null, this.connection);
+            this.shutdownListeners.forEach(listener -> listener.shutdownCompleted(cause));
+        }
+
+        private void recovered() {
+            this.recoveryListeners.forEach(listener -> listener.handleRecovery((Recoverable) this.connection));
+        }
+    }
+}
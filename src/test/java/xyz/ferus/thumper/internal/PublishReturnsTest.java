@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import xyz.ferus.thumper.RabbitException;
+
+class PublishReturnsTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void shutDown() {
+        this.scheduler.shutdownNow();
+    }
+
+    @Test
+    void completesOnceWindowHasPassed() throws Exception {
+        PublishReturns returns = new PublishReturns(Duration.ofMillis(10).toNanos(), () -> this.scheduler);
+        CompletableFuture<@Nullable Void> future = publish(returns);
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void closeFailsPublishesStillInTheirWindow() {
+        PublishReturns returns = new PublishReturns(Duration.ofMinutes(1).toNanos(), () -> this.scheduler);
+        CompletableFuture<@Nullable Void> windowed = publish(returns);
+        CompletableFuture<@Nullable Void> confirmed = new CompletableFuture<>();
+        returns.register(confirmed);
+
+        returns.close();
+        assertClosedFailure(windowed);
+        assertClosedFailure(confirmed);
+        assertEquals(0, returns.pending());
+    }
+
+    @Test
+    void rejectedSweepFailsPublishInsteadOfThrowing() {
+        this.scheduler.shutdown();
+        PublishReturns returns = new PublishReturns(Duration.ofMillis(10).toNanos(), () -> this.scheduler);
+        CompletableFuture<@Nullable Void> confirmed = new CompletableFuture<>();
+        long confirmedId = returns.register(confirmed);
+
+        CompletableFuture<@Nullable Void> windowed = publish(returns);
+        assertClosedFailure(windowed);
+        // A publish settled by its confirm is not affected by the sweep being rejected.
+        assertFalse(confirmed.isDone());
+        returns.settle(confirmedId, null);
+        assertTrue(confirmed.isDone() && !confirmed.isCompletedExceptionally());
+    }
+
+    private static CompletableFuture<@Nullable Void> publish(PublishReturns returns) {
+        CompletableFuture<@Nullable Void> future = new CompletableFuture<>();
+        returns.settleAfterWindow(returns.register(future));
+        return future;
+    }
+
+    private static void assertClosedFailure(CompletableFuture<@Nullable Void> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RabbitException.class, e.getCause());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Connection;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.ferus.thumper.BackpressurePolicy;
+import xyz.ferus.thumper.ChannelFunction;
+import xyz.ferus.thumper.RabbitException;
+import xyz.ferus.thumper.codec.CodecRegistry;
+import xyz.ferus.thumper.queue.SubscriptionOptions;
+
+class PublishSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void emptySpoolIsInactive() throws IOException {
+        try (PublishSpool spool = PublishSpool.open(this.directory, 4096)) {
+            assertFalse(spool.active());
+        }
+    }
+
+    @Test
+    void spooledPublishesSurviveReopening() throws Exception {
+        try (PublishSpool spool = PublishSpool.open(this.directory, 4096)) {
+            spool.append(List.of(record("first"), record("second"))).get();
+            assertTrue(spool.active());
+        }
+
+        try (PublishSpool spool = PublishSpool.open(this.directory, 4096)) {
+            assertTrue(spool.active());
+        }
+    }
+
+    @Test
+    void rollsOverToNewSegmentWhenFull() throws Exception {
+        try (PublishSpool spool = PublishSpool.open(this.directory, 256)) {
+            for (int i = 0; i < 16; i++) {
+                spool.append(List.of(record("message " + i))).get();
+            }
+        }
+        try (Stream<Path> files = Files.list(this.directory)) {
+            assertTrue(files.count() > 1);
+        }
+    }
+
+    @Test
+    void refusesAppendsOnceClosed() throws IOException {
+        PublishSpool spool = PublishSpool.open(this.directory, 4096);
+        spool.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> spool.append(List.of(record("late")))
+                .get());
+        assertInstanceOf(RabbitException.class, e.getCause());
+    }
+
+    @Test
+    void closeAbandonsBatchBrokerNeverSettles() throws Exception {
+        PublishSpool spool = PublishSpool.open(this.directory, 4096);
+        spool.append(List.of(record("first"), record("second"))).get();
+
+        CompletableFuture<?> drained = new CompletableFuture<>();
+        AtomicBoolean draining = new AtomicBoolean();
+        spool.attach(
+                new RabbitImpl(
+                        new ConnectionGroup(List.of(connection())),
+                        Runnable::run,
+                        CodecRegistry.newRegistry(),
+                        new RabbitOptions(
+                                false,
+                                1,
+                                1,
+                                null,
+                                null,
+                                Integer.MAX_VALUE,
+                                Long.MAX_VALUE,
+                                BackpressurePolicy.WAIT,
+                                Duration.ZERO,
+                                null,
+                                0,
+                                1,
+                                SubscriptionOptions.defaultOptions()),
+                        spool) {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <R> CompletableFuture<R> transform(ChannelFunction<R> function) {
+                        // A broker that never confirms the batch.
+                        draining.set(true);
+                        return (CompletableFuture<R>) drained;
+                    }
+                });
+
+        assertTrue(draining.get());
+
+        long start = System.nanoTime();
+        spool.close(Duration.ofMillis(100));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        try (PublishSpool reopened = PublishSpool.open(this.directory, 4096)) {
+            assertTrue(reopened.active());
+        }
+    }
+
+    // A connection that is never blocked or shut down, so the spool drains as soon as it is attached.
+    private static Connection connection() {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().startsWith("add")) {
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static SpoolRecord record(String body) {
+        return new SpoolRecord("exchange", "key", false, new AMQP.BasicProperties(), body.getBytes());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.rabbitmq.client.AMQP;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class SpoolRecordTest {
+
+    @Test
+    void roundTripsEveryProperty() throws IOException {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("string", "value");
+        headers.put("int", 1);
+        headers.put("long", 2L);
+        headers.put("decimal", new BigDecimal("12.345"));
+        headers.put("bytes", new byte[] {1, 2, 3});
+        headers.put("table", Map.of("nested", true));
+        headers.put("array", List.of("a", 1));
+        headers.put("null", null);
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .contentType("application/json")
+                .contentEncoding("gzip")
+                .headers(headers)
+                .deliveryMode(2)
+                .priority(5)
+                .correlationId("correlation")
+                .replyTo("reply")
+                .expiration("60000")
+                .messageId("message")
+                .timestamp(new Date(1_700_000_000_000L))
+                .type("type")
+                .userId("user")
+                .appId("app")
+                .clusterId("cluster")
+                .build();
+        SpoolRecord record = new SpoolRecord("exchange", "routing.key", true, properties, new byte[] {9, 8, 7});
+
+        SpoolRecord decoded = SpoolRecord.decode(record.encode());
+        assertEquals("exchange", decoded.exchange());
+        assertEquals("routing.key", decoded.routingKey());
+        assertTrue(decoded.mandatory());
+        assertArrayEquals(new byte[] {9, 8, 7}, decoded.body());
+
+        AMQP.BasicProperties read = decoded.properties();
+        assertEquals(properties.getContentType(), read.getContentType());
+        assertEquals(properties.getContentEncoding(), read.getContentEncoding());
+        assertEquals(properties.getDeliveryMode(), read.getDeliveryMode());
+        assertEquals(properties.getPriority(), read.getPriority());
+        assertEquals(properties.getCorrelationId(), read.getCorrelationId());
+        assertEquals(properties.getReplyTo(), read.getReplyTo());
+        assertEquals(properties.getExpiration(), read.getExpiration());
+        assertEquals(properties.getMessageId(), read.getMessageId());
+        assertEquals(properties.getTimestamp(), read.getTimestamp());
+        assertEquals(properties.getType(), read.getType());
+        assertEquals(properties.getUserId(), read.getUserId());
+        assertEquals(properties.getAppId(), read.getAppId());
+        assertEquals(properties.getClusterId(), read.getClusterId());
+
+        Map<String, Object> readHeaders = read.getHeaders();
+        assertEquals("value", readHeaders.get("string"));
+        assertEquals(1, readHeaders.get("int"));
+        assertEquals(2L, readHeaders.get("long"));
+        assertEquals(new BigDecimal("12.345"), readHeaders.get("decimal"));
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) readHeaders.get("bytes"));
+        assertEquals(Map.of("nested", true), readHeaders.get("table"));
+        assertEquals(Arrays.asList("a", 1), readHeaders.get("array"));
+        assertTrue(readHeaders.containsKey("null"));
+        assertNull(readHeaders.get("null"));
+    }
+
+    @Test
+    void roundTripsEmptyProperties() throws IOException {
+        SpoolRecord record = new SpoolRecord("", "", false, new AMQP.BasicProperties(), new byte[0]);
+        SpoolRecord decoded = SpoolRecord.decode(record.encode());
+        assertNull(decoded.properties().getHeaders());
+        assertNull(decoded.properties().getDeliveryMode());
+        assertEquals(0, decoded.body().length);
+    }
+
+    @Test
+    void rejectsUnsupportedHeaderValueWhenEncoding() {
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .headers(Map.of("thread", new Object()))
+                .build();
+        SpoolRecord record = new SpoolRecord("", "", false, properties, new byte[0]);
+        assertThrows(IOException.class, record::encode);
+    }
+
+    @Test
+    void rejectsTruncatedPayload() throws IOException {
+        byte[] encoded = new SpoolRecord("exchange", "key", false, new AMQP.BasicProperties(), new byte[16]).encode();
+        assertThrows(IOException.class, () -> SpoolRecord.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+    }
+}
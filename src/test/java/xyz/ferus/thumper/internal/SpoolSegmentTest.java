@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpoolSegmentTest {
+
+    private static final int SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackAppendedRecordsInOrder() throws IOException {
+        try (SpoolSegment segment = SpoolSegment.create(this.directory, 1, SIZE)) {
+            assertTrue(segment.append(bytes("first")));
+            assertTrue(segment.append(bytes("second")));
+            assertTrue(segment.append(bytes("third")));
+
+            assertEquals(List.of("first", "second", "third"), readFrom(segment, SpoolSegment.HEADER_SIZE));
+            assertFalse(segment.fullyDrained());
+        }
+    }
+
+    @Test
+    void refusesRecordThatDoesNotFit() throws IOException {
+        int capacity = SpoolSegment.HEADER_SIZE + SpoolSegment.RECORD_OVERHEAD + 4;
+        try (SpoolSegment segment = SpoolSegment.create(this.directory, 1, capacity)) {
+            assertTrue(segment.append(bytes("four")));
+            assertFalse(segment.append(bytes("x")));
+            assertEquals(List.of("four"), readFrom(segment, SpoolSegment.HEADER_SIZE));
+        }
+    }
+
+    @Test
+    void reopenRestoresRecordsAndDrainedPosition() throws IOException {
+        int afterFirst;
+        try (SpoolSegment segment = SpoolSegment.create(this.directory, 7, SIZE)) {
+            segment.append(bytes("first"));
+            segment.append(bytes("second"));
+            segment.append(bytes("third"));
+            afterFirst = segment.read(SpoolSegment.HEADER_SIZE).next();
+            segment.drained(afterFirst);
+        }
+
+        try (SpoolSegment segment = reopen(7)) {
+            assertEquals(afterFirst, segment.drainedPosition());
+            assertEquals(List.of("second", "third"), readFrom(segment, segment.drainedPosition()));
+
+            // Appends continue after the last complete record.
+            assertTrue(segment.append(bytes("fourth")));
+            assertEquals(List.of("second", "third", "fourth"), readFrom(segment, segment.drainedPosition()));
+        }
+    }
+
+    @Test
+    void reopenOfFullyDrainedSegmentIsFullyDrained() throws IOException {
+        try (SpoolSegment segment = SpoolSegment.create(this.directory, 1, SIZE)) {
+            segment.append(bytes("only"));
+            segment.drained(segment.read(SpoolSegment.HEADER_SIZE).next());
+            assertTrue(segment.fullyDrained());
+        }
+        try (SpoolSegment segment = reopen(1)) {
+            assertTrue(segment.fullyDrained());
+        }
+    }
+
+    @Test
+    void ignoresRecordWithCorruptPayload() throws IOException {
+        int third;
+        try (SpoolSegment segment = SpoolSegment.create(this.directory, 1, SIZE)) {
+            segment.append(bytes("first"));
+            segment.append(bytes("second"));
+            third = segment.read(segment.read(SpoolSegment.HEADER_SIZE).next()).next();
+            segment.append(bytes("third"));
+        }
+        // A write torn after the length reached the disk, but before all of the payload did.
+        overwrite(1, third + SpoolSegment.RECORD_OVERHEAD, new byte[] {0});
+
+        try (SpoolSegment segment = reopen(1)) {
+            assertEquals(List.of("first", "second"), readFrom(segment, SpoolSegment.HEADER_SIZE));
+            // The torn record is written over by the next append.
+            assertTrue(segment.append(bytes("replacement")));
+            assertEquals(List.of("first", "second", "replacement"), readFrom(segment, SpoolSegment.HEADER_SIZE));
+        }
+    }
+
+    @Test
+    void ignoresRecordWithoutLength() throws IOException {
+        int second;
+        try (SpoolSegment segment = SpoolSegment.create(this.directory, 1, SIZE)) {
+            segment.append(bytes("first"));
+            second = segment.read(SpoolSegment.HEADER_SIZE).next();
+            segment.append(bytes("second"));
+        }
+        // A write torn before its length, which is written last, reached the disk.
+        overwrite(1, second, new byte[4]);
+
+        try (SpoolSegment segment = reopen(1)) {
+            assertEquals(List.of("first"), readFrom(segment, SpoolSegment.HEADER_SIZE));
+        }
+    }
+
+    @Test
+    void ignoresRecordCutOffByTruncation() throws IOException {
+        int second;
+        try (SpoolSegment segment = SpoolSegment.create(this.directory, 1, SIZE)) {
+            segment.append(bytes("first"));
+            second = segment.read(SpoolSegment.HEADER_SIZE).next();
+            segment.append(bytes("second record"));
+        }
+        try (FileChannel file = FileChannel.open(path(1), StandardOpenOption.WRITE)) {
+            file.truncate(second + SpoolSegment.RECORD_OVERHEAD + 3);
+        }
+
+        try (SpoolSegment segment = reopen(1)) {
+            assertEquals(List.of("first"), readFrom(segment, SpoolSegment.HEADER_SIZE));
+            assertFalse(segment.fullyDrained());
+        }
+    }
+
+    @Test
+    void rejectsFileThatIsNotASegment() throws IOException {
+        Files.write(path(1), new byte[SIZE]);
+        assertThrows(IOException.class, () -> reopen(1));
+
+        Files.write(path(2), new byte[SpoolSegment.HEADER_SIZE - 1]);
+        assertThrows(IOException.class, () -> reopen(2));
+    }
+
+    @Test
+    void deleteRemovesFile() throws IOException {
+        SpoolSegment segment = SpoolSegment.create(this.directory, 1, SIZE);
+        segment.delete();
+        assertFalse(Files.exists(path(1)));
+    }
+
+    private SpoolSegment reopen(long sequence) throws IOException {
+        return SpoolSegment.open(path(sequence), sequence);
+    }
+
+    private Path path(long sequence) {
+        return this.directory.resolve(SpoolSegment.fileName(sequence));
+    }
+
+    private void overwrite(long sequence, int position, byte[] bytes) throws IOException {
+        try (FileChannel file = FileChannel.open(path(sequence), StandardOpenOption.WRITE)) {
+            file.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    private static List<String> readFrom(SpoolSegment segment, int position) {
+        List<String> records = new ArrayList<>();
+        SpoolSegment.@Nullable Entry entry;
+        while ((entry = segment.read(position)) != null) {
+            records.add(new String(entry.payload(), StandardCharsets.UTF_8));
+            position = entry.next();
+        }
+        return records;
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal;
+
+import com.rabbitmq.client.Channel;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A channel with no connection behind it, for exercising code that only opens, closes and compares channels.
+ */
+public final class StubChannel implements InvocationHandler {
+
+    private static final AtomicInteger NUMBERS = new AtomicInteger();
+
+    private final int number;
+    private final AtomicBoolean open;
+    private final AtomicInteger closes;
+
+    private StubChannel() {
+        this.number = NUMBERS.incrementAndGet();
+        this.open = new AtomicBoolean(true);
+        this.closes = new AtomicInteger();
+    }
+
+    public static Channel open() {
+        return (Channel) Proxy.newProxyInstance(
+                StubChannel.class.getClassLoader(), new Class<?>[] {Channel.class}, new StubChannel());
+    }
+
+    public static StubChannel of(Channel channel) {
+        return (StubChannel) Proxy.getInvocationHandler(channel);
+    }
+
+    public void kill() {
+        this.open.set(false);
+    }
+
+    public int closes() {
+        return this.closes.get();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "isOpen" -> this.open.get();
+            case "close", "abort" -> {
+                this.closes.incrementAndGet();
+                this.open.set(false);
+                yield null;
+            }
+            case "getChannelNumber" -> this.number;
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "StubChannel(" + this.number + ")";
+            default -> throw new UnsupportedOperationException(method.getName());
+        };
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+import xyz.ferus.thumper.codec.Codec;
+import xyz.ferus.thumper.codec.CodecFactory;
+import xyz.ferus.thumper.codec.EncodingException;
+
+class CodecRegistryImplTest {
+
+    private final CodecRegistryImpl registry = new CodecRegistryImpl();
+
+    @Test
+    void returnsCodecRegisteredForType() throws Exception {
+        Codec<Animal> codec = codec(Animal.class, Dog::new);
+        this.registry.register(codec);
+        assertSame(codec, this.registry.get(Animal.class));
+    }
+
+    @Test
+    void resolvesThroughSuperclass() throws Exception {
+        this.registry.register(codec(Animal.class, Dog::new));
+        Codec<Dog> codec = this.registry.get(Dog.class);
+
+        assertEquals(Dog.class, codec.type());
+        assertArrayEquals("rex".getBytes(StandardCharsets.UTF_8), codec.encode(new Dog("rex")));
+        assertEquals("rex", codec.decode("rex".getBytes(StandardCharsets.UTF_8)).name());
+    }
+
+    @Test
+    void resolvesThroughInterface() throws Exception {
+        this.registry.register(codec(Named.class, Dog::new));
+        Codec<Dog> codec = this.registry.get(Dog.class);
+        assertEquals("rex", codec.decode("rex".getBytes(StandardCharsets.UTF_8)).name());
+    }
+
+    @Test
+    void prefersSuperclassOverInterface() throws Exception {
+        Codec<Named> named = codec(Named.class, Cat::new);
+        Codec<Animal> animal = codec(Animal.class, Dog::new);
+        this.registry.register(named);
+        this.registry.register(animal);
+
+        Codec<Dog> codec = this.registry.get(Dog.class);
+        assertEquals(
+                Dog.class, codec.decode("rex".getBytes(StandardCharsets.UTF_8)).getClass());
+    }
+
+    @Test
+    void inheritedCodecRejectsOtherSubtypes() throws Exception {
+        this.registry.register(codec(Animal.class, Cat::new));
+        Codec<Dog> codec = this.registry.get(Dog.class);
+        assertThrows(EncodingException.class, () -> codec.decode("tom".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void throwsWhenNothingResolves() {
+        assertThrows(EncodingException.class, () -> this.registry.get(Dog.class));
+    }
+
+    @Test
+    void cachesMisses() {
+        CountingFactory factory = new CountingFactory();
+        this.registry.register(factory);
+
+        assertThrows(EncodingException.class, () -> this.registry.get(Dog.class));
+        int asked = factory.asked.size();
+        assertThrows(EncodingException.class, () -> this.registry.get(Dog.class));
+        assertEquals(asked, factory.asked.size());
+    }
+
+    @Test
+    void cachesFactoryCodecs() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        factory.creates = Dog.class;
+        this.registry.register(factory);
+
+        Codec<Dog> first = this.registry.get(Dog.class);
+        Codec<Dog> second = this.registry.get(Dog.class);
+        assertSame(first, second);
+        assertEquals(List.of(Dog.class), factory.asked);
+    }
+
+    @Test
+    void registeringCodecInvalidatesCachedMiss() throws Exception {
+        assertThrows(EncodingException.class, () -> this.registry.get(Dog.class));
+
+        this.registry.register(codec(Animal.class, Dog::new));
+        assertEquals(Dog.class, this.registry.get(Dog.class).type());
+    }
+
+    @Test
+    void registeringCodecReplacesInheritedResolution() throws Exception {
+        this.registry.register(codec(Animal.class, Dog::new));
+        Codec<Dog> inherited = this.registry.get(Dog.class);
+
+        Codec<Dog> own = codec(Dog.class, Dog::new);
+        this.registry.register(own);
+        assertSame(own, this.registry.get(Dog.class));
+        assertEquals(Dog.class, inherited.type());
+    }
+
+    @Test
+    void registeringFactoryInvalidatesCachedMiss() throws Exception {
+        assertThrows(EncodingException.class, () -> this.registry.get(Dog.class));
+
+        CountingFactory factory = new CountingFactory();
+        factory.creates = Dog.class;
+        this.registry.register(factory);
+        assertEquals(Dog.class, this.registry.get(Dog.class).type());
+    }
+
+    interface Named {
+        String name();
+    }
+
+    abstract static class Animal implements Named {
+        private final String name;
+
+        Animal(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return this.name;
+        }
+    }
+
+    static final class Dog extends Animal {
+        Dog(String name) {
+            super(name);
+        }
+    }
+
+    static final class Cat extends Animal {
+        Cat(String name) {
+            super(name);
+        }
+    }
+
+    private static <T> Codec<T> codec(Class<T> type, Function<String, ? extends T> decode) {
+        return new Codec<>() {
+            @Override
+            public Class<T> type() {
+                return type;
+            }
+
+            @Override
+            public byte[] encode(T object) {
+                return ((Named) object).name().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public T decode(byte[] bytes) {
+                return decode.apply(new String(bytes, StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    // Records every type it is asked about, and creates a codec only for one of them.
+    private static final class CountingFactory implements CodecFactory {
+        private final List<Class<?>> asked = new ArrayList<>();
+        private @Nullable Class<?> creates;
+
+        @Override
+        public <T> @Nullable Codec<T> create(Class<T> type) {
+            this.asked.add(type);
+            return type == this.creates ? codec(type, name -> type.cast(new Dog(name))) : null;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.exchange;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+import xyz.ferus.thumper.exchange.MessageProperties;
+import xyz.ferus.thumper.exchange.Publisher;
+import xyz.ferus.thumper.exchange.PublishingSubscriber;
+
+class PublishingSubscriberImplTest {
+
+    @Test
+    void completesOncePublishesComplete() throws Exception {
+        List<CompletableFuture<@Nullable Void>> publishes = new ArrayList<>();
+        PublishingSubscriberImpl<String> subscriber = new PublishingSubscriberImpl<>(
+                publisher(message -> {
+                    CompletableFuture<@Nullable Void> published = new CompletableFuture<>();
+                    publishes.add(published);
+                    return published;
+                }),
+                2);
+        RecordingSubscription upstream = new RecordingSubscription();
+
+        subscriber.onSubscribe(upstream);
+        subscriber.onNext("a");
+        subscriber.onNext("b");
+        subscriber.onComplete();
+        assertFalse(subscriber.completion().isDone());
+
+        publishes.forEach(published -> published.complete(null));
+        assertTrue(subscriber.completion().isDone());
+        assertEquals(4, upstream.requested);
+    }
+
+    @Test
+    void failsWhenPublishThrows() {
+        IllegalStateException thrown = new IllegalStateException("closed");
+        PublishingSubscriberImpl<String> subscriber = new PublishingSubscriberImpl<>(
+                publisher(message -> {
+                    throw thrown;
+                }),
+                2);
+        RecordingSubscription upstream = new RecordingSubscription();
+
+        subscriber.onSubscribe(upstream);
+        subscriber.onNext("a");
+
+        ExecutionException failure = assertThrows(
+                ExecutionException.class, () -> subscriber.completion().get());
+        assertSame(thrown, failure.getCause());
+        assertTrue(upstream.cancelled);
+    }
+
+    @Test
+    void publishesNothingOnceFailed() {
+        List<String> published = new ArrayList<>();
+        PublishingSubscriberImpl<String> subscriber = new PublishingSubscriberImpl<>(
+                publisher(message -> {
+                    published.add(message);
+                    return CompletableFuture.failedFuture(new IllegalStateException("rejected"));
+                }),
+                4);
+        RecordingSubscription upstream = new RecordingSubscription();
+
+        subscriber.onSubscribe(upstream);
+        subscriber.onNext("a");
+        // Already requested before the cancellation took effect.
+        subscriber.onNext("b");
+
+        assertTrue(upstream.cancelled);
+        assertTrue(subscriber.completion().isCompletedExceptionally());
+        assertEquals(List.of("a"), published);
+    }
+
+    private static Publisher<String> publisher(Function<String, CompletableFuture<@Nullable Void>> publish) {
+        return new Publisher<>() {
+            @Override
+            public CompletableFuture<@Nullable Void> publish(String message) {
+                return publish.apply(message);
+            }
+
+            @Override
+            public CompletableFuture<@Nullable Void> publish(String message, MessageProperties properties) {
+                return publish.apply(message);
+            }
+
+            @Override
+            public MessageProperties properties() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public PublishingSubscriber<String> subscriber(int maxInFlight) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static final class RecordingSubscription implements Flow.Subscription {
+        private long requested;
+        private boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            this.requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.exchange;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import xyz.ferus.thumper.RabbitException;
+import xyz.ferus.thumper.exchange.PublishPriority;
+import xyz.ferus.thumper.exchange.RateLimit;
+
+class TokenBucketTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void shutDown() {
+        this.scheduler.shutdownNow();
+    }
+
+    @Test
+    void releasesHeldPublishOnceTokensRefill() throws Exception {
+        TokenBucket bucket = new TokenBucket(RateLimit.messages(100, 1), this.scheduler);
+        assertTrue(acquire(bucket).isDone());
+
+        CompletableFuture<@Nullable Void> held = acquire(bucket);
+        assertFalse(held.isDone());
+        held.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void closeFailsHeldPublishes() {
+        TokenBucket bucket = new TokenBucket(RateLimit.messages(0.001, 1), this.scheduler);
+        acquire(bucket);
+        CompletableFuture<@Nullable Void> held = acquire(bucket);
+
+        bucket.close();
+        assertClosedFailure(held);
+        assertClosedFailure(acquire(bucket));
+    }
+
+    @Test
+    void rejectedTimerFailsPublishInsteadOfParkingIt() {
+        TokenBucket bucket = new TokenBucket(RateLimit.messages(0.001, 1), this.scheduler);
+        acquire(bucket);
+        this.scheduler.shutdown();
+
+        assertClosedFailure(acquire(bucket));
+    }
+
+    private static CompletableFuture<@Nullable Void> acquire(TokenBucket bucket) {
+        return bucket.acquire(PublishPriority.NORMAL, 1, 1);
+    }
+
+    private static void assertClosedFailure(CompletableFuture<@Nullable Void> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RabbitException.class, e.getCause());
+    }
+}
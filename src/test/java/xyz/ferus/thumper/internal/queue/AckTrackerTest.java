@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.rabbitmq.client.Channel;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AckTrackerTest {
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Sends every acknowledgement as soon as the tracker releases it, so the calls show each watermark.
+    private final AckTracker tracker =
+            new AckTracker(new AckCoalescer(recordingChannel(), 1, Duration.ZERO, this.scheduler));
+
+    @AfterEach
+    void shutDown() {
+        this.scheduler.shutdownNow();
+    }
+
+    @Test
+    void acksInOrderCompletionsOneByOne() throws Exception {
+        AckTracker.Pending first = this.tracker.begin(1);
+        AckTracker.Pending second = this.tracker.begin(2);
+        this.tracker.complete(first);
+        this.tracker.complete(second);
+        assertEquals(List.of("ack 1", "ack 2"), this.calls);
+    }
+
+    @Test
+    void holdsBackAcksUntilEarlierDeliveriesComplete() throws Exception {
+        AckTracker.Pending first = this.tracker.begin(1);
+        AckTracker.Pending second = this.tracker.begin(2);
+        AckTracker.Pending third = this.tracker.begin(3);
+
+        this.tracker.complete(third);
+        this.tracker.complete(second);
+        assertEquals(List.of(), this.calls);
+
+        this.tracker.complete(first);
+        assertEquals(List.of("ack 3 multiple"), this.calls);
+    }
+
+    @Test
+    void watermarkSkipsRejectedDeliveries() throws Exception {
+        AckTracker.Pending first = this.tracker.begin(1);
+        AckTracker.Pending second = this.tracker.begin(2);
+        AckTracker.Pending third = this.tracker.begin(3);
+        AckTracker.Pending fourth = this.tracker.begin(4);
+
+        this.tracker.complete(first);
+        this.tracker.reject(second, true);
+        this.tracker.complete(fourth);
+        this.tracker.complete(third);
+        assertEquals(List.of("ack 1", "nack 2 requeue", "ack 4 multiple"), this.calls);
+    }
+
+    @Test
+    void neverAcksRejectedDeliveryAsWatermark() throws Exception {
+        AckTracker.Pending first = this.tracker.begin(1);
+        AckTracker.Pending second = this.tracker.begin(2);
+
+        this.tracker.reject(second, false);
+        this.tracker.complete(first);
+        assertEquals(List.of("nack 2", "ack 1"), this.calls);
+    }
+
+    @Test
+    void rejectingEveryDeliveryAcksNothing() throws Exception {
+        AckTracker.Pending first = this.tracker.begin(1);
+        AckTracker.Pending second = this.tracker.begin(2);
+
+        this.tracker.reject(second, false);
+        this.tracker.reject(first, true);
+        assertEquals(List.of("nack 2", "nack 1 requeue"), this.calls);
+    }
+
+    @Test
+    void concurrentCompletionsEndAtHighestHandledTag() throws Exception {
+        int deliveries = 10_000;
+        List<AckTracker.Pending> pending = new ArrayList<>(deliveries);
+        for (long tag = 1; tag <= deliveries; tag++) {
+            pending.add(this.tracker.begin(tag));
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < deliveries; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int index : order) {
+                executor.execute(() -> {
+                    try {
+                        // The highest tag is always completed, so it must end up as the last watermark.
+                        if (index != deliveries - 1
+                                && ThreadLocalRandom.current().nextInt(10) == 0) {
+                            this.tracker.reject(pending.get(index), true);
+                        } else {
+                            this.tracker.complete(pending.get(index));
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+
+        List<String> acks;
+        synchronized (this.calls) {
+            acks = this.calls.stream().filter(call -> call.startsWith("ack")).toList();
+        }
+        assertFalse(acks.isEmpty());
+        assertEquals("ack " + deliveries, acks.get(acks.size() - 1).replace(" multiple", ""));
+    }
+
+    private Channel recordingChannel() {
+        return (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(), new Class<?>[] {Channel.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return true;
+                        case "basicAck":
+                            this.calls.add("ack " + args[0] + ((boolean) args[1] ? " multiple" : ""));
+                            return null;
+                        case "basicNack":
+                            this.calls.add("nack " + args[0] + ((boolean) args[1] ? " multiple" : "")
+                                    + ((boolean) args[2] ? " requeue" : ""));
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
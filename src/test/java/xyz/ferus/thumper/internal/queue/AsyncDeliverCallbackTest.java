@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import xyz.ferus.thumper.codec.Codec;
+import xyz.ferus.thumper.queue.FailurePolicy;
+
+class AsyncDeliverCallbackTest {
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AckTracker acks =
+            new AckTracker(new AckCoalescer(recordingChannel(), 1, Duration.ZERO, this.scheduler));
+    // The failure policy only republishes for dead-lettering and delayed retries, so no Rabbit instance is needed.
+    private final FailureHandler failures =
+            new FailureHandler(null, "queue", FailurePolicy.retry(3, Duration.ofMillis(1), FailurePolicy.drop()));
+
+    @AfterEach
+    void shutDown() {
+        this.scheduler.shutdownNow();
+    }
+
+    @Test
+    void retriesUntilExhausted() throws Exception {
+        AbstractQueueImpl.AsyncDeliverCallback<String> callback = new AbstractQueueImpl.AsyncDeliverCallback<>(
+                codec(),
+                message -> CompletableFuture.failedFuture(new IllegalStateException()),
+                this.acks,
+                this.failures,
+                1,
+                this.scheduler,
+                Runnable::run);
+
+        callback.handle("consumer", delivery(1));
+        awaitCall("nack 1");
+    }
+
+    @Test
+    void settlesRetryTheSchedulerRejects() throws Exception {
+        ScheduledExecutorService stopped = Executors.newSingleThreadScheduledExecutor();
+        stopped.shutdown();
+        AbstractQueueImpl.AsyncDeliverCallback<String> callback = new AbstractQueueImpl.AsyncDeliverCallback<>(
+                codec(),
+                message -> CompletableFuture.failedFuture(new IllegalStateException()),
+                this.acks,
+                this.failures,
+                1,
+                stopped,
+                Runnable::run);
+
+        // With one permit, the second delivery only gets through if the first one's permit was released.
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            callback.handle("consumer", delivery(1));
+            callback.handle("consumer", delivery(2));
+        });
+        assertEquals(List.of("nack 1", "nack 2"), this.calls);
+    }
+
+    @Test
+    void settlesRetryTheExecutorRejects() throws Exception {
+        AbstractQueueImpl.AsyncDeliverCallback<String> callback = new AbstractQueueImpl.AsyncDeliverCallback<>(
+                codec(),
+                message -> CompletableFuture.failedFuture(new IllegalStateException()),
+                this.acks,
+                this.failures,
+                1,
+                this.scheduler,
+                task -> {
+                    throw new RejectedExecutionException();
+                });
+
+        callback.handle("consumer", delivery(1));
+        awaitCall("nack 1");
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> callback.handle("consumer", delivery(2)));
+        awaitCall("nack 2");
+    }
+
+    private void awaitCall(String call) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!this.calls.contains(call) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(this.calls.contains(call), "Expected " + call + " in " + this.calls);
+    }
+
+    private static Delivery delivery(long tag) {
+        return new Delivery(
+                new Envelope(tag, false, "exchange", "key"),
+                new AMQP.BasicProperties(),
+                "message".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Codec<String> codec() {
+        return new Codec<>() {
+            @Override
+            public Class<String> type() {
+                return String.class;
+            }
+
+            @Override
+            public byte[] encode(String object) {
+                return object.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    private Channel recordingChannel() {
+        return (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(), new Class<?>[] {Channel.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return true;
+                        case "basicAck":
+                            this.calls.add("ack " + args[0]);
+                            return null;
+                        case "basicNack":
+                            this.calls.add("nack " + args[0]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
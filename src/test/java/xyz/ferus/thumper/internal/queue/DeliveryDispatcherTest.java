@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class DeliveryDispatcherTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+
+    @AfterEach
+    void shutDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    void runsDeliveriesSharingKeyOneAtATimeInOrder() throws Exception {
+        int keys = 32;
+        int deliveries = 20_000;
+        DeliveryDispatcher dispatcher = new DeliveryDispatcher(this.executor, 4, true);
+        Map<Integer, List<Integer>> seen = new ConcurrentHashMap<>();
+        Map<Integer, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(deliveries);
+
+        for (int i = 0; i < deliveries; i++) {
+            int key = i % keys;
+            int sequence = i;
+            dispatcher.dispatch("key-" + key, i + 1, () -> {
+                AtomicInteger active = running.computeIfAbsent(key, k -> new AtomicInteger());
+                if (active.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                // Not synchronized: deliveries sharing a key must never run concurrently.
+                seen.computeIfAbsent(key, k -> new ArrayList<>()).add(sequence);
+                active.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        assertFalse(overlapped.get(), "Deliveries sharing a key ran concurrently");
+        for (int key = 0; key < keys; key++) {
+            List<Integer> sequences = seen.get(key);
+            assertEquals(deliveries / keys, sequences.size());
+            for (int i = 1; i < sequences.size(); i++) {
+                assertTrue(sequences.get(i - 1) < sequences.get(i), "Key " + key + " ran out of order");
+            }
+        }
+    }
+
+    @Test
+    void spreadsDeliveriesWithoutKeyAcrossLanes() throws Exception {
+        DeliveryDispatcher dispatcher = new DeliveryDispatcher(this.executor, 4, true);
+        CountDownLatch running = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        for (long tag = 1; tag <= 4; tag++) {
+            dispatcher.dispatch(null, tag, () -> {
+                running.countDown();
+                awaitQuietly(release);
+            });
+        }
+        // Consecutive tags land on different lanes, so all four run at once.
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void capsUnorderedConcurrency() throws Exception {
+        int concurrency = 3;
+        int deliveries = 200;
+        DeliveryDispatcher dispatcher = new DeliveryDispatcher(this.executor, concurrency, false);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(deliveries);
+
+        for (int i = 0; i < deliveries; i++) {
+            dispatcher.dispatch("same-key", i + 1, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= concurrency, "Ran " + maxRunning.get() + " deliveries at once");
+    }
+
+    @Test
+    void recoversWhenExecutorRejectsWorker() throws Exception {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        DeliveryDispatcher dispatcher = new DeliveryDispatcher(
+                task -> {
+                    if (reject.get()) {
+                        throw new RejectedExecutionException();
+                    }
+                    this.executor.execute(task);
+                },
+                1,
+                false);
+
+        CountDownLatch done = new CountDownLatch(2);
+        assertThrows(RejectedExecutionException.class, () -> dispatcher.dispatch(null, 1, done::countDown));
+
+        // The rejected worker is not counted, so the next delivery starts one, which also runs the queued task.
+        reject.set(false);
+        dispatcher.dispatch(null, 2, done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.internal.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import xyz.ferus.thumper.queue.FailurePolicy;
+import xyz.ferus.thumper.queue.SubscriptionOptions;
+
+class FailureHandlerTest {
+
+    private final List<String> settled = new ArrayList<>();
+    private final FailureHandler.Settlement settlement = new FailureHandler.Settlement() {
+        @Override
+        public void ack() {
+            FailureHandlerTest.this.settled.add("ack");
+        }
+
+        @Override
+        public void reject(boolean requeue) {
+            FailureHandlerTest.this.settled.add(requeue ? "requeue" : "drop");
+        }
+    };
+
+    @Test
+    void requeuesFailedMessage() {
+        // Neither requeueing nor dropping republishes anything, so no Rabbit instance is needed.
+        FailureHandler failures = new FailureHandler(null, "queue", FailurePolicy.requeue());
+        failures.settle(delivery(), new IllegalStateException(), this.settlement)
+                .join();
+        assertEquals(List.of("requeue"), this.settled);
+    }
+
+    @Test
+    void dropsUndecodableMessageInsteadOfRequeueing() {
+        FailureHandler failures = new FailureHandler(null, "queue", FailurePolicy.requeue());
+        failures.settle(delivery(), new UndecodableMessageException(new IllegalStateException()), this.settlement)
+                .join();
+        assertEquals(List.of("drop"), this.settled);
+    }
+
+    @Test
+    void dropsByDefaultOnceRetriesRunOut() {
+        FailureHandler failures = new FailureHandler(
+                null, "queue", SubscriptionOptions.defaultOptions().failurePolicy());
+        assertEquals(
+                3, ((FailurePolicy.Retry) SubscriptionOptions.defaultOptions().failurePolicy()).maxRetries());
+        failures.settle(delivery(), new IllegalStateException(), this.settlement)
+                .join();
+        assertEquals(List.of("drop"), this.settled);
+    }
+
+    private static Delivery delivery() {
+        return new Delivery(new Envelope(1, false, "exchange", "key"), new AMQP.BasicProperties(), new byte[0]);
+    }
+}
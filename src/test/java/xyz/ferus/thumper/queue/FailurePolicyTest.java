@@ -0,0 +1,77 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023 Nicholas Badger (FerusGrim) <https://ferus.xyz>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package xyz.ferus.thumper.queue;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FailurePolicyTest {
+
+    @Test
+    void retryDoublesBackoff() {
+        FailurePolicy.Retry retry = new FailurePolicy.Retry(3, Duration.ofMillis(100), FailurePolicy.drop());
+        assertEquals(Duration.ofMillis(100), retry.backoff(0));
+        assertEquals(Duration.ofMillis(200), retry.backoff(1));
+        assertEquals(Duration.ofMillis(400), retry.backoff(2));
+    }
+
+    @Test
+    void retryAcceptsBackoffsUpToLimit() {
+        // 1 + 2 + 4 + ... + 128 seconds is 255 seconds, under five minutes.
+        assertDoesNotThrow(() -> FailurePolicy.retry(8, Duration.ofSeconds(1), FailurePolicy.drop()));
+        assertDoesNotThrow(() -> FailurePolicy.retry(1, FailurePolicy.Retry.MAX_TOTAL_BACKOFF, FailurePolicy.drop()));
+        assertDoesNotThrow(() -> FailurePolicy.retry(Integer.MAX_VALUE, Duration.ZERO, FailurePolicy.drop()));
+    }
+
+    @Test
+    void retryRejectsBackoffsPastLimit() {
+        // One more retry takes it to 511 seconds.
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> FailurePolicy.retry(9, Duration.ofSeconds(1), FailurePolicy.drop()));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> FailurePolicy.retry(Integer.MAX_VALUE, Duration.ofMillis(1), FailurePolicy.drop()));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> FailurePolicy.retry(1, FailurePolicy.Retry.MAX_TOTAL_BACKOFF.plusNanos(1), FailurePolicy.drop()));
+    }
+
+    @Test
+    void delayedRetryRejectsDelaysUnderOneMillisecond() {
+        assertDoesNotThrow(() -> FailurePolicy.delayedRetry(List.of(Duration.ofMillis(1)), FailurePolicy.drop()));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> FailurePolicy.delayedRetry(List.of(Duration.ofNanos(999_999)), FailurePolicy.drop()));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> FailurePolicy.delayedRetry(List.of(Duration.ZERO), FailurePolicy.drop()));
+    }
+}